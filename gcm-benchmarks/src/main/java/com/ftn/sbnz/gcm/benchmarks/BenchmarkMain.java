@@ -0,0 +1,38 @@
+package com.ftn.sbnz.gcm.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Arrays;
+
+/**
+ * Runs the benchmarks with fixed fork and iteration counts and writes the results as JSON.
+ * <p>
+ * {@code args[0]} is the result file, the remaining arguments are regular JMH options
+ * (benchmark regex, {@code -p param=value}, ...) and override the defaults below.
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        String resultFile = args.length > 0 ? args[0] : "jmh-result.json";
+        String[] jmhArgs = args.length > 1
+                ? Arrays.stream(args, 1, args.length).filter(a -> !a.isBlank()).toArray(String[]::new)
+                : new String[0];
+
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .forks(2)
+                .warmupIterations(5)
+                .measurementIterations(10)
+                .shouldFailOnError(true)
+                .jvmArgsAppend("-Xms2g", "-Xmx2g")
+                .result(resultFile)
+                .resultFormat(ResultFormatType.JSON)
+                .parent(new CommandLineOptions(jmhArgs));
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,108 @@
+package com.ftn.sbnz.gcm.benchmarks;
+
+import com.ftn.sbnz.gcm.model.models.Food;
+import com.ftn.sbnz.gcm.model.models.FoodCatalog;
+import com.ftn.sbnz.gcm.model.models.GlucoseMeasurement;
+import com.ftn.sbnz.gcm.model.models.Suggestion;
+import com.ftn.sbnz.gcm.model.models.Trend;
+import com.ftn.sbnz.gcm.service.journal.InputLog;
+import com.ftn.sbnz.gcm.service.rules.KieBaseHolder;
+import com.ftn.sbnz.gcm.service.rules.RetentionPolicy;
+import com.ftn.sbnz.gcm.service.service.RuleEngineSession;
+import com.ftn.sbnz.gcm.service.service.RuleEventPublisher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One reading through {@link RuleEngineSession#evaluateAndPublish}, the per-reading path of the sensor feed,
+ * with a working memory already holding {@code liveReadings} readings inside the trend window.
+ * <p>
+ * Readings are spaced so all of them stay in the 15 minute window, and every benchmark call
+ * replaces the oldest one, so working memory keeps its size for the whole run.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EvaluateBenchmark {
+
+    private static final long WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(15);
+
+    @Param({"100", "1000", "10000"})
+    int liveReadings;
+
+    private final CountingPublisher publisher = new CountingPublisher();
+    private RuleEngineSession session;
+    private long now;
+    private long step;
+    private double[] values;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        KieBaseHolder kieBase = KieBaseHolder.of(KieBaseHolder.compileTemplates());
+        // Retention far beyond the window, only the engine's own expiry removes readings
+        RetentionPolicy retention = new RetentionPolicy(Duration.ofDays(1), Duration.ofDays(1), Duration.ofDays(1), Duration.ofDays(1));
+        FoodCatalog noFoods = (constraint, limit) -> Collections.<Food>emptyList();
+
+        Random random = new Random(42);
+        values = new double[4096];
+        double value = 6.0;
+        for (int i = 0; i < values.length; i++) {
+            value = Math.max(2.5, Math.min(20.0, value + random.nextGaussian() * 0.3));
+            values[i] = value;
+        }
+
+        step = Math.max(1, WINDOW_MILLIS / liveReadings);
+        now = 0;
+        session = new RuleEngineSession("bench", kieBase, () -> now, publisher, retention, noFoods, InputLog.NONE);
+        session.initSession();
+        for (int i = 0; i < liveReadings; i++) {
+            evaluateNext();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        session.dispose();
+    }
+
+    @Benchmark
+    public long evaluateAndPublish() {
+        evaluateNext();
+        return publisher.published;
+    }
+
+    private void evaluateNext() {
+        now += step;
+        double value = values[next++ & (values.length - 1)];
+        session.evaluateAndPublish(new GlucoseMeasurement(value, now), true);
+    }
+
+    // Counts what the rules send, so channel calls are not optimized away
+    private static final class CountingPublisher implements RuleEventPublisher {
+        long published;
+
+        @Override
+        public void trend(String patientId, Trend trend) {
+            published++;
+        }
+
+        @Override
+        public void suggestion(String patientId, Suggestion suggestion) {
+            published++;
+        }
+    }
+}
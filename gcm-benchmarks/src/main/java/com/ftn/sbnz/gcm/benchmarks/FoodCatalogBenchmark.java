@@ -0,0 +1,73 @@
+package com.ftn.sbnz.gcm.benchmarks;
+
+import com.ftn.sbnz.gcm.model.enums.GlycemicIndexType;
+import com.ftn.sbnz.gcm.model.models.Food;
+import com.ftn.sbnz.gcm.model.models.FoodConstraint;
+import com.ftn.sbnz.gcm.service.service.FoodCatalogIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Food-constraint matching of the suggestion rules against catalogs of different sizes.
+ * {@code firstMatch} is what the rules ask for, {@code allMatches} walks every match of a wide constraint.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FoodCatalogBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    int catalogSize;
+
+    private final FoodCatalogIndex index = new FoodCatalogIndex(null);
+    private FoodConstraint[] constraints;
+    private FoodConstraint wide;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        List<Food> foods = new ArrayList<>(catalogSize);
+        for (int i = 0; i < catalogSize; i++) {
+            foods.add(Food.builder()
+                    .id(new UUID(42, i))
+                    .name("food-" + i)
+                    .carbs(random.nextDouble() * 100)
+                    .fats(random.nextDouble() * 40)
+                    .glycemicIndex(random.nextInt(110))
+                    .build());
+        }
+        index.rebuild(foods);
+
+        GlycemicIndexType[] types = GlycemicIndexType.values();
+        constraints = new FoodConstraint[1024];
+        for (int i = 0; i < constraints.length; i++) {
+            double minCarbs = random.nextDouble() * 60;
+            constraints[i] = new FoodConstraint(minCarbs, minCarbs + 5 + random.nextDouble() * 30,
+                    2 + random.nextDouble() * 20, types[random.nextInt(types.length)]);
+        }
+        wide = new FoodConstraint(10, 60, 20, GlycemicIndexType.LOW);
+    }
+
+    @Benchmark
+    public List<Food> firstMatch() {
+        return index.find(constraints[next++ & (constraints.length - 1)], 1);
+    }
+
+    @Benchmark
+    public List<Food> allMatches() {
+        return index.find(wide, Integer.MAX_VALUE);
+    }
+}
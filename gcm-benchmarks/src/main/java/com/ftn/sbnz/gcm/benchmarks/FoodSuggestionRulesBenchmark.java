@@ -0,0 +1,116 @@
+package com.ftn.sbnz.gcm.benchmarks;
+
+import com.ftn.sbnz.gcm.model.enums.ActivityIntensity;
+import com.ftn.sbnz.gcm.model.enums.GlycemicIndexType;
+import com.ftn.sbnz.gcm.model.models.ActivityEvent;
+import com.ftn.sbnz.gcm.model.models.FoodRuleTemplate;
+import com.ftn.sbnz.gcm.model.models.LatestGlucose;
+import com.ftn.sbnz.gcm.model.rules.RuleTemplate;
+import org.drools.template.ObjectDataCompiler;
+import org.kie.api.KieBase;
+import org.kie.api.KieBaseConfiguration;
+import org.kie.api.KieServices;
+import org.kie.api.conf.EventProcessingOption;
+import org.kie.api.io.ResourceType;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.KieSessionConfiguration;
+import org.kie.api.runtime.conf.ClockTypeOption;
+import org.kie.api.runtime.rule.FactHandle;
+import org.kie.internal.utils.KieHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one glucose update against the food suggestion rules as their table grows,
+ * for the current constraint based template and the eval() based one it replaced.
+ * <p>
+ * Rows are random glucose ranges over a small set of boundaries (as a hand written table would use),
+ * spread over all activity intensities. One activity of every intensity is planned, so activity rows can match.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FoodSuggestionRulesBenchmark {
+
+    private static final String EVAL_TEMPLATE = "/food-suggestion-eval.drt";
+
+    @Param({"1", "100", "1000", "10000"})
+    int rows;
+
+    @Param({"constraint", "eval"})
+    String template;
+
+    private KieSession session;
+    private LatestGlucose latest;
+    private FactHandle latestHandle;
+    private double[] values;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        ActivityIntensity[] intensities = ActivityIntensity.values();
+        GlycemicIndexType[] giTypes = GlycemicIndexType.values();
+        List<FoodRuleTemplate> table = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            double min = 2 + random.nextInt(26) * 0.5;
+            table.add(new FoodRuleTemplate(i + 1, min, min + 0.5 + random.nextInt(8) * 0.5,
+                    intensities[random.nextInt(intensities.length)],
+                    random.nextInt(40), 40 + random.nextInt(40), 1 + random.nextInt(20),
+                    giTypes[random.nextInt(giTypes.length)]));
+        }
+
+        String drl;
+        try (InputStream drt = "eval".equals(template)
+                ? getClass().getResourceAsStream(EVAL_TEMPLATE)
+                : getClass().getResourceAsStream("/rules/" + RuleTemplate.FOOD_SUGGESTION.getTemplateFile())) {
+            drl = new ObjectDataCompiler().compile(table, drt);
+        }
+        KieBaseConfiguration kBaseConfig = KieServices.Factory.get().newKieBaseConfiguration();
+        kBaseConfig.setOption(EventProcessingOption.STREAM);
+        KieBase kieBase = new KieHelper().addContent(drl, ResourceType.DRL).build(kBaseConfig);
+
+        KieSessionConfiguration kSessionCfg = KieServices.Factory.get().newKieSessionConfiguration();
+        kSessionCfg.setOption(ClockTypeOption.get("pseudo"));
+        session = kieBase.newKieSession(kSessionCfg, null);
+        session.setGlobal("droolsClock", session.getSessionClock());
+        for (ActivityIntensity intensity : intensities) {
+            session.insert(new ActivityEvent(null, TimeUnit.DAYS.toMillis(1), 30, intensity));
+        }
+
+        values = new double[1024];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 2 + random.nextDouble() * 16;
+        }
+        latest = new LatestGlucose(values[0], 0);
+        latestHandle = session.insert(latest);
+        session.fireAllRules();
+    }
+
+    @TearDown
+    public void tearDown() {
+        session.dispose();
+    }
+
+    /** What RuleEngineSession does for every reading: update the single LatestGlucose fact and fire. */
+    @Benchmark
+    public int updateAndFire() {
+        latest.setValue(values[next++ & (values.length - 1)]);
+        session.update(latestHandle, latest);
+        return session.fireAllRules();
+    }
+}
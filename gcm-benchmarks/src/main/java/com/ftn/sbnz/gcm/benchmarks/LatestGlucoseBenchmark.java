@@ -0,0 +1,102 @@
+package com.ftn.sbnz.gcm.benchmarks;
+
+import com.ftn.sbnz.gcm.model.models.GlucoseMeasurement;
+import com.ftn.sbnz.gcm.model.models.LatestGlucose;
+import org.kie.api.KieBase;
+import org.kie.api.KieBaseConfiguration;
+import org.kie.api.KieServices;
+import org.kie.api.conf.EventProcessingOption;
+import org.kie.api.io.ResourceType;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.rule.FactHandle;
+import org.kie.internal.utils.KieHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cost of one reading (insert + fireAllRules) with {@code liveReadings} readings already in working memory,
+ * for the old "no newer GlucoseMeasurement" join and the LatestGlucose fact RuleEngineSession keeps.
+ * Readings are never removed, so working memory grows by one per call on top of {@code liveReadings}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LatestGlucoseBenchmark {
+
+    private static final String HEADER =
+            "import com.ftn.sbnz.gcm.model.models.GlucoseMeasurement;\n" +
+            "import com.ftn.sbnz.gcm.model.models.LatestGlucose;\n" +
+            "global java.util.concurrent.atomic.AtomicLong hits;\n";
+
+    private static final String JOIN_RULE = HEADER +
+            "rule \"High latest (join)\" when\n" +
+            "    $gm: GlucoseMeasurement( value > 9.9 )\n" +
+            "    not( GlucoseMeasurement( timestamp > $gm.timestamp ) )\n" +
+            "then hits.incrementAndGet(); end\n";
+
+    private static final String LATEST_RULE = HEADER +
+            "rule \"High latest (fact)\" when\n" +
+            "    $gm: LatestGlucose( value > 9.9 )\n" +
+            "then hits.incrementAndGet(); end\n";
+
+    @Param({"100", "1000", "10000"})
+    int liveReadings;
+
+    @Param({"join", "latest"})
+    String match;
+
+    private KieSession ksession;
+    private LatestGlucose latest;
+    private FactHandle latestHandle;
+    private long t;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        KieBaseConfiguration cfg = KieServices.Factory.get().newKieBaseConfiguration();
+        cfg.setOption(EventProcessingOption.CLOUD);
+        KieBase kBase = new KieHelper().addContent("join".equals(match) ? JOIN_RULE : LATEST_RULE, ResourceType.DRL).build(cfg);
+        ksession = kBase.newKieSession();
+        ksession.setGlobal("hits", new AtomicLong());
+        if (!"join".equals(match)) {
+            latest = new LatestGlucose(0, 0);
+            latestHandle = ksession.insert(latest);
+        }
+        t = 0;
+        for (int i = 0; i < liveReadings; i++) {
+            ksession.insert(new GlucoseMeasurement(reading(t), t++));
+        }
+        ksession.fireAllRules();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ksession.dispose();
+    }
+
+    @Benchmark
+    public int reading() {
+        GlucoseMeasurement gm = new GlucoseMeasurement(reading(t), t++);
+        ksession.insert(gm);
+        if (latestHandle != null) {
+            latest.setValue(gm.getValue());
+            latest.setTimestamp(gm.getTimestamp());
+            ksession.update(latestHandle, latest);
+        }
+        return ksession.fireAllRules();
+    }
+
+    private static double reading(long i) {
+        return 8 + 4 * Math.sin(i / 10.0);
+    }
+}
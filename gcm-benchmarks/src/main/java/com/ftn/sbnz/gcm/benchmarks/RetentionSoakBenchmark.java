@@ -0,0 +1,88 @@
+package com.ftn.sbnz.gcm.benchmarks;
+
+import com.ftn.sbnz.gcm.model.enums.ActivityIntensity;
+import com.ftn.sbnz.gcm.model.models.ActivityEvent;
+import com.ftn.sbnz.gcm.model.models.Food;
+import com.ftn.sbnz.gcm.model.models.FoodCatalog;
+import com.ftn.sbnz.gcm.model.models.GlucoseMeasurement;
+import com.ftn.sbnz.gcm.model.models.InsulinEvent;
+import com.ftn.sbnz.gcm.model.models.Suggestion;
+import com.ftn.sbnz.gcm.model.models.Trend;
+import com.ftn.sbnz.gcm.service.journal.InputLog;
+import com.ftn.sbnz.gcm.service.rules.KieBaseHolder;
+import com.ftn.sbnz.gcm.service.rules.RetentionPolicy;
+import com.ftn.sbnz.gcm.service.service.RuleEngineSession;
+import com.ftn.sbnz.gcm.service.service.RuleEventPublisher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code days} simulated days of readings every 5 minutes, insulin every 6 hours and activity every 12 hours
+ * through one session under the default retention. Each iteration is one fresh session; the fact counts
+ * it ends with are returned, they stay flat whatever the number of days.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class RetentionSoakBenchmark {
+
+    private static final long READING_EVERY = Duration.ofMinutes(5).toMillis();
+    private static final long INSULIN_EVERY = Duration.ofHours(6).toMillis();
+    private static final long ACTIVITY_EVERY = Duration.ofHours(12).toMillis();
+
+    @Param({"30"})
+    int days;
+
+    private KieBaseHolder kieBase;
+    private final RetentionPolicy retention = new RetentionPolicy(
+            Duration.ofHours(6), Duration.ofHours(24), Duration.ofHours(24), Duration.ofHours(24));
+    private final FoodCatalog noFoods = (constraint, limit) -> Collections.<Food>emptyList();
+    private final RuleEventPublisher noClients = new RuleEventPublisher() {
+        @Override public void trend(String patientId, Trend trend) {}
+        @Override public void suggestion(String patientId, Suggestion suggestion) {}
+    };
+
+    @Setup
+    public void setUp() {
+        kieBase = KieBaseHolder.of(KieBaseHolder.compileTemplates());
+    }
+
+    @Benchmark
+    public Map<String, Long> soak() {
+        long[] now = new long[1];
+        RuleEngineSession session = new RuleEngineSession("soak", kieBase, () -> now[0], noClients, retention, noFoods, InputLog.NONE);
+        session.initSession();
+        long end = Duration.ofDays(days).toMillis();
+        for (long t = 0; t <= end; t += READING_EVERY) {
+            now[0] = t;
+            session.evaluateAndPublish(new GlucoseMeasurement(reading(t), t), true);
+            if (t % INSULIN_EVERY == 0)
+                session.insertEvent(new InsulinEvent(UUID.randomUUID(), t, 4));
+            if (t % ACTIVITY_EVERY == 0)
+                session.insertEvent(new ActivityEvent(UUID.randomUUID(), t + READING_EVERY, 30, ActivityIntensity.LOW));
+        }
+        Map<String, Long> counts = session.factCounts();
+        session.dispose();
+        return counts;
+    }
+
+    private static double reading(long t) {
+        return 8 + 5 * Math.sin(t / (double) Duration.ofHours(3).toMillis());
+    }
+}
@@ -0,0 +1,44 @@
+package com.ftn.sbnz.gcm.benchmarks;
+
+import com.ftn.sbnz.gcm.model.rules.RuleTemplateExpander;
+import com.ftn.sbnz.gcm.service.rules.KieBaseHolder;
+import org.kie.api.KieBase;
+import org.kie.api.KieServices;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup cost of the rule base when it is built from the templates ({@code rules.source=templates})
+ * against loading the executable model pre-built by gcm-kjar ({@code rules.source=kjar}).
+ * Each iteration is one cold call, a new container for the kjar.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+public class RuleBaseBenchmark {
+
+    @Benchmark
+    public Map<String, String> expandTemplates() {
+        return RuleTemplateExpander.fromClasspath().expandAll();
+    }
+
+    @Benchmark
+    public KieBase buildKieBase() {
+        return KieBaseHolder.compileTemplates();
+    }
+
+    @Benchmark
+    public KieBase loadKjar() {
+        KieServices ks = KieServices.Factory.get();
+        return ks.newKieContainer(ks.newReleaseId("com.ftn.sbnz", "gcm-kjar", "0.0.1-SNAPSHOT"))
+                .getKieBase(KieBaseHolder.KBASE_NAME);
+    }
+}
@@ -0,0 +1,58 @@
+package com.ftn.sbnz.gcm.benchmarks;
+
+import com.ftn.sbnz.gcm.model.accumulate.TrendWindow;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of sliding the trend accumulator by one reading, the work the engine does per reading
+ * to keep the trend rules' accumulate up to date, at several window sizes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TrendWindowBenchmark {
+
+    @Param({"4", "16", "256"})
+    int windowSize;
+
+    private final TrendWindow window = new TrendWindow();
+    private Object[] facts;
+    private double[] values;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        facts = new Object[windowSize + 1];
+        values = new double[facts.length];
+        for (int i = 0; i < facts.length; i++) {
+            facts[i] = new Object();
+            values[i] = 4 + random.nextDouble() * 10;
+        }
+        window.reset();
+        for (int i = 0; i < windowSize; i++) {
+            window.add(facts[i], values[i]);
+        }
+        next = windowSize;
+    }
+
+    /** Oldest reading leaves, a new one arrives, the trend rules read both deltas. */
+    @Benchmark
+    public double slide() {
+        int oldest = (next + 1) % facts.length;
+        window.remove(facts[oldest]);
+        window.add(facts[next], values[next]);
+        next = oldest;
+        return window.weightedDelta() + window.maxDelta();
+    }
+}
@@ -0,0 +1,97 @@
+package com.ftn.sbnz.gcm.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ftn.sbnz.gcm.model.enums.TrendType;
+import com.ftn.sbnz.gcm.model.models.SuggestionMessage;
+import com.ftn.sbnz.gcm.model.models.TrendMessage;
+import com.ftn.sbnz.gcm.service.ws.GlucoseMessage;
+import com.ftn.sbnz.gcm.service.ws.StreamCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding CPU of the JSON text frames against the {@code gcm.v1.bin} binary frames, for the same messages.
+ * Bytes on the wire do not vary between runs and are not a benchmark result, only the encoding time is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WireFormatBenchmark {
+
+    private static final int HISTORY = 120;
+
+    private final ObjectMapper om = new ObjectMapper();
+    private long[] t;
+    private double[] mmol;
+    private List<GlucoseMessage> history;
+    private String suggestion;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        t = new long[HISTORY];
+        mmol = new double[HISTORY];
+        history = new ArrayList<>(HISTORY);
+        long time = 1_700_000_000_000L;
+        double value = 6.0;
+        for (int i = 0; i < HISTORY; i++) {
+            time += 60_000 + random.nextInt(2_000) - 1_000;
+            value = Math.max(2.5, Math.min(20.0, value + random.nextGaussian() * 0.2));
+            t[i] = time;
+            mmol[i] = Math.round(value * 100) / 100.0;
+            history.add(new GlucoseMessage(t[i], mmol[i]));
+        }
+        suggestion = "Based on your recent glucose levels and activity, consider eating an apple";
+    }
+
+    @Benchmark
+    public String jsonGlucose() throws JsonProcessingException {
+        return om.writeValueAsString(history.get(HISTORY - 1));
+    }
+
+    @Benchmark
+    public byte[] binaryGlucose() {
+        return StreamCodec.glucose(t[HISTORY - 2], t[HISTORY - 1], mmol[HISTORY - 1]);
+    }
+
+    @Benchmark
+    public String jsonTrend() throws JsonProcessingException {
+        return om.writeValueAsString(new TrendMessage("↗"));
+    }
+
+    @Benchmark
+    public byte[] binaryTrend() {
+        return StreamCodec.trend(TrendType.UP.ordinal(), 1);
+    }
+
+    @Benchmark
+    public String jsonSuggestion() throws JsonProcessingException {
+        return om.writeValueAsString(new SuggestionMessage(t[0], suggestion));
+    }
+
+    @Benchmark
+    public byte[] binarySuggestion() {
+        return StreamCodec.suggestion(t[0], suggestion);
+    }
+
+    @Benchmark
+    public String jsonHistory() throws JsonProcessingException {
+        return om.writeValueAsString(history);
+    }
+
+    @Benchmark
+    public byte[] binaryHistory() {
+        return StreamCodec.history(t[HISTORY - 1], t, mmol);
+    }
+}
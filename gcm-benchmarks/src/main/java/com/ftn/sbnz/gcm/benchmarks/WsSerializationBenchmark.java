@@ -0,0 +1,89 @@
+package com.ftn.sbnz.gcm.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.ftn.sbnz.gcm.model.models.SuggestionMessage;
+import com.ftn.sbnz.gcm.model.models.TrendMessage;
+import com.ftn.sbnz.gcm.service.ws.GlucoseMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson cost of the WebSocket handlers: one message per glucose reading, trend and suggestion,
+ * and the 120 reading history sent when a glucose client connects, per message and as a single array.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WsSerializationBenchmark {
+
+    private static final int HISTORY = 120;
+
+    // Same as the handlers, a plain ObjectMapper
+    private final ObjectMapper om = new ObjectMapper();
+    private ObjectWriter glucoseWriter;
+    private GlucoseMessage glucose;
+    private TrendMessage trend;
+    private SuggestionMessage suggestion;
+    private List<GlucoseMessage> history;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        long t = 1_700_000_000_000L;
+        history = new ArrayList<>(HISTORY);
+        for (int i = 0; i < HISTORY; i++) {
+            history.add(new GlucoseMessage(t + i * 60_000L, 4 + random.nextDouble() * 10));
+        }
+        glucose = history.get(HISTORY - 1);
+        trend = new TrendMessage("RISING");
+        suggestion = new SuggestionMessage(t, "Eat 15-20 g of fast acting carbohydrates");
+        glucoseWriter = om.writerFor(GlucoseMessage.class);
+    }
+
+    @Benchmark
+    public String glucose() throws JsonProcessingException {
+        return om.writeValueAsString(glucose);
+    }
+
+    @Benchmark
+    public String glucosePrebuiltWriter() throws JsonProcessingException {
+        return glucoseWriter.writeValueAsString(glucose);
+    }
+
+    @Benchmark
+    public String trend() throws JsonProcessingException {
+        return om.writeValueAsString(trend);
+    }
+
+    @Benchmark
+    public String suggestion() throws JsonProcessingException {
+        return om.writeValueAsString(suggestion);
+    }
+
+    /** History as sent today, one text frame per reading. */
+    @Benchmark
+    public int historyPerMessage() throws JsonProcessingException {
+        int bytes = 0;
+        for (GlucoseMessage msg : history) {
+            bytes += om.writeValueAsString(msg).length();
+        }
+        return bytes;
+    }
+
+    @Benchmark
+    public String historyAsArray() throws JsonProcessingException {
+        return om.writeValueAsString(history);
+    }
+}
@@ -65,10 +65,7 @@ function Dashboard() {
 
     useEffect(() => {
         eventsApi.list({from: getTimeNow() - 60 * 60 * 1000, to: getTimeNow() + 24 * 60 * 60 * 1000})
-            .then(evts => {
-                const e = [...evts.food, ...evts.insulin, ...evts.activity];
-                setEvents(e);
-            }).catch(err => toast.error("Failed to load events: " + JSON.parse(err.message).error));
+            .then(evts => setEvents(evts)).catch(err => toast.error("Failed to load events: " + JSON.parse(err.message).error));
     }, [USE_MOCK]);
 
     // Glucose WS
@@ -82,6 +79,9 @@ function Dashboard() {
                     return [...prev, { t: msg.t, mmol: msg.mmol }]
                 });
             }
+        }, (history) => {
+            // Replaces what a previous connection left, the server sends the full recent window
+            setSamples(history.map(m => ({ t: m.t, mmol: m.mmol })));
         });
         return () => closeGlucoseRef.current?.();
     }, [USE_MOCK]);
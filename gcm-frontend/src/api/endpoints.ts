@@ -1,7 +1,7 @@
 import type {
     FoodItem,
     TimelineEvent,
-    EventType, TimelineEventList,
+    EventType, TimelineEventPage,
 } from "@/types";
 import { http, setAuthToken } from "./http";
 import { getTimeNow } from "@/utils/time";
@@ -24,13 +24,26 @@ type ListEventsQuery = {
 };
 
 export const events = {
-    list: (q?: ListEventsQuery) =>
-        http.get<TimelineEventList>("/events", {
+    page: (q?: ListEventsQuery, after?: string) =>
+        http.get<TimelineEventPage>("/events", {
             from: q?.from,
             to: q?.to,
             types: q?.types?.join(","),
+            after,
         }),
 
+    /** Follows the cursor until the last page. */
+    list: async (q?: ListEventsQuery): Promise<TimelineEvent[]> => {
+        const all: TimelineEvent[] = [];
+        let after: string | undefined;
+        do {
+            const page: TimelineEventPage = await events.page(q, after);
+            all.push(...page.events);
+            after = page.next ?? undefined;
+        } while (after);
+        return all;
+    },
+
     /**
      * Create a TimelineEvent with client-side defaults/validation:
      * - FOOD/INSULIN: if 'at' missing, stamp with getTimeNow()
@@ -9,13 +9,21 @@ function resolve(urlOrBase: string, path: string) {
     return `${urlOrBase.replace(/\/$/, "")}${path}`;
 }
 
+/** The first frame after connecting is the recent history as an array, every later one a single reading. */
 export function openGlucoseWS(
     urlOrBase: string,
-    onMsg: (msg: { t: number; mmol: number }) => void
+    onMsg: (msg: { t: number; mmol: number }) => void,
+    onHistory: (msgs: { t: number; mmol: number }[]) => void
 ): CloseFn {
     const url = resolve(urlOrBase, "/ws/glucose");
     const ws = new WebSocket(url);
-    ws.onmessage = (e) => { try { onMsg(JSON.parse(e.data)); } catch {console.error(e);} };
+    ws.onmessage = (e) => {
+        try {
+            const data = JSON.parse(e.data);
+            if (Array.isArray(data)) onHistory(data);
+            else onMsg(data);
+        } catch {console.error(e);}
+    };
     return () => ws.close();
 }
 
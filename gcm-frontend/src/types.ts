@@ -23,10 +23,9 @@ export interface TimelineEvent {
     label?: string; // short description
 }
 
-export interface TimelineEventList {
-    food: TimelineEvent[];
-    insulin: TimelineEvent[];
-    activity: TimelineEvent[];
+export interface TimelineEventPage {
+    events: TimelineEvent[]; // ordered by time
+    next?: string | null;    // cursor for the next page, null on the last one
 }
 
 
@@ -5,12 +5,14 @@ const baseUrl = import.meta.env.VITE_API_BASE ?? "";
 export const SPEED = 10;
 
 let t0Real = Date.now();
+// server clock moved forward to catch up with recovered sessions
+let offset = 0;
 
 // one-time init guard
 let _initPromise: Promise<void> | null = null;
 
 export function getTimeNow(): number {
-    return t0Real + (Date.now() - t0Real) * SPEED;
+    return t0Real + (Date.now() - t0Real) * SPEED + offset;
 }
 
 export const REAL_INTERVAL = 30_000;         // 30s
@@ -26,7 +28,7 @@ export async function initClockFromServer(): Promise<void> {
             const res = await fetch(url);
             if (!res.ok) throw new Error(`${res.status} ${res.statusText}`);
 
-            // Expecting: { t0Real: number }
+            // Expecting: { t0Real: number, offset: number }
             const data = await res.json();
             const serverT0Real = Number(data?.t0Real);
 
@@ -36,6 +38,7 @@ export async function initClockFromServer(): Promise<void> {
 
             // Anchor: pair local "now" with server's t0Real
             t0Real = serverT0Real;
+            offset = Number(data?.offset) || 0;
         } catch {
             toast.error("Could not sync time with server, using local time.");
         }
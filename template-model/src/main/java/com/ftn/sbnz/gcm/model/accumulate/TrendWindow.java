@@ -0,0 +1,173 @@
+package com.ftn.sbnz.gcm.model.accumulate;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * Glucose values of a sliding window in arrival order, kept in a primitive ring buffer.
+ * Net delta, recent delta and the largest jump between consecutive values are available in O(1);
+ * appending and dropping the oldest value are amortized O(1).
+ * The largest jump is tracked with a monotonic deque over the consecutive deltas.
+ */
+public class TrendWindow implements Externalizable {
+
+    static final int RECENT_COUNT = 3;
+
+    // Ring buffers indexed by sequence number & mask
+    private Object[] facts;
+    private double[] values;
+    // diffs[s] = |values[s] - values[s - 1]|, only valid for s > headSeq
+    private double[] diffs;
+    private long[] maxQueue;
+    private int mask;
+
+    private long headSeq;
+    private long tailSeq;
+    private long maxHead;
+    private long maxTail;
+
+    public TrendWindow() {
+        allocate(16);
+    }
+
+    public void reset() {
+        java.util.Arrays.fill(facts, null);
+        headSeq = tailSeq = 0;
+        maxHead = maxTail = 0;
+    }
+
+    public int size() {
+        return (int) (tailSeq - headSeq);
+    }
+
+    public void add(Object fact, double value) {
+        if (size() == values.length) {
+            allocate(values.length * 2);
+        }
+        long seq = tailSeq++;
+        int idx = (int) (seq & mask);
+        facts[idx] = fact;
+        values[idx] = value;
+        if (seq > headSeq) {
+            double diff = Math.abs(value - values[(int) ((seq - 1) & mask)]);
+            diffs[idx] = diff;
+            while (maxTail > maxHead && diffs[(int) (maxQueue[(int) ((maxTail - 1) & mask)] & mask)] <= diff) {
+                maxTail--;
+            }
+            maxQueue[(int) (maxTail++ & mask)] = seq;
+        }
+    }
+
+    /**
+     * Removes the given fact. Windows drop their oldest fact first, which is O(1);
+     * any other position falls back to rebuilding the buffer.
+     */
+    public void remove(Object fact) {
+        if (size() == 0) return;
+        if (facts[(int) (headSeq & mask)] == fact) {
+            facts[(int) (headSeq & mask)] = null;
+            headSeq++;
+            // The delta into the new head now spans the window boundary
+            while (maxTail > maxHead && maxQueue[(int) (maxHead & mask)] <= headSeq) {
+                maxHead++;
+            }
+            return;
+        }
+        removeFromMiddle(fact);
+    }
+
+    public double netDelta() {
+        if (size() < 2) return 0.0;
+        return last() - values[(int) (headSeq & mask)];
+    }
+
+    public double recentDelta() {
+        if (size() < 2) return 0.0;
+        int recent = Math.min(RECENT_COUNT, size());
+        return last() - values[(int) ((tailSeq - recent) & mask)];
+    }
+
+    /** 60% recent trend, 40% overall trend. */
+    public double weightedDelta() {
+        if (size() < 2) return 0.0;
+        return 0.6 * recentDelta() + 0.4 * netDelta();
+    }
+
+    public double maxDelta() {
+        if (maxTail == maxHead) return 0.0;
+        return diffs[(int) (maxQueue[(int) (maxHead & mask)] & mask)];
+    }
+
+    private double last() {
+        return values[(int) ((tailSeq - 1) & mask)];
+    }
+
+    private void removeFromMiddle(Object fact) {
+        int n = size();
+        Object[] keptFacts = new Object[n];
+        double[] keptValues = new double[n];
+        int kept = 0;
+        boolean removed = false;
+        for (long s = headSeq; s < tailSeq; s++) {
+            int idx = (int) (s & mask);
+            if (!removed && facts[idx] == fact) {
+                removed = true;
+                continue;
+            }
+            keptFacts[kept] = facts[idx];
+            keptValues[kept++] = values[idx];
+        }
+        if (!removed) return;
+        reset();
+        for (int i = 0; i < kept; i++) {
+            add(keptFacts[i], keptValues[i]);
+        }
+    }
+
+    private void allocate(int capacity) {
+        Object[] newFacts = new Object[capacity];
+        double[] newValues = new double[capacity];
+        double[] newDiffs = new double[capacity];
+        long[] newQueue = new long[capacity];
+        int newMask = capacity - 1;
+        if (facts != null) {
+            for (long s = headSeq; s < tailSeq; s++) {
+                int from = (int) (s & mask);
+                int to = (int) (s & newMask);
+                newFacts[to] = facts[from];
+                newValues[to] = values[from];
+                newDiffs[to] = diffs[from];
+            }
+            for (long q = maxHead; q < maxTail; q++) {
+                newQueue[(int) (q & newMask)] = maxQueue[(int) (q & mask)];
+            }
+        }
+        facts = newFacts;
+        values = newValues;
+        diffs = newDiffs;
+        maxQueue = newQueue;
+        mask = newMask;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeInt(size());
+        for (long s = headSeq; s < tailSeq; s++) {
+            int idx = (int) (s & mask);
+            out.writeObject(facts[idx]);
+            out.writeDouble(values[idx]);
+        }
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        int n = in.readInt();
+        reset();
+        for (int i = 0; i < n; i++) {
+            Object fact = in.readObject();
+            add(fact, in.readDouble());
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.ftn.sbnz.gcm.model.accumulate;
+
+import com.ftn.sbnz.gcm.model.models.GlucoseMeasurement;
+import com.ftn.sbnz.gcm.model.models.TrendSignal;
+import org.kie.api.runtime.rule.AccumulateFunction;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * Accumulates {@link GlucoseMeasurement}s of a window into a {@link TrendSignal}.
+ * Works incrementally on a {@link TrendWindow}, so each insert or expiry costs O(1)
+ * instead of collecting and rescanning the whole window.
+ * <pre>
+ * import accumulate com.ftn.sbnz.gcm.model.accumulate.TrendWindowAccumulateFunction trendWindow;
+ * </pre>
+ */
+public class TrendWindowAccumulateFunction implements AccumulateFunction<TrendWindow> {
+
+    @Override
+    public TrendWindow createContext() {
+        return new TrendWindow();
+    }
+
+    @Override
+    public void init(TrendWindow context) {
+        context.reset();
+    }
+
+    @Override
+    public void accumulate(TrendWindow context, Object value) {
+        context.add(value, ((GlucoseMeasurement) value).getValue());
+    }
+
+    @Override
+    public void reverse(TrendWindow context, Object value) {
+        context.remove(value);
+    }
+
+    @Override
+    public Object getResult(TrendWindow context) {
+        return new TrendSignal(context.weightedDelta(), context.maxDelta(), context.size());
+    }
+
+    @Override
+    public boolean supportsReverse() {
+        return true;
+    }
+
+    @Override
+    public Class<?> getResultType() {
+        return TrendSignal.class;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        // stateless
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        // stateless
+    }
+}
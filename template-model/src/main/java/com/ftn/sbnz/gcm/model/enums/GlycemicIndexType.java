@@ -1,5 +1,21 @@
 package com.ftn.sbnz.gcm.model.enums;
 
+import lombok.Getter;
+
+/**
+ * Glycemic index groups, bounds are inclusive.
+ */
+@Getter
 public enum GlycemicIndexType {
-    LOW, MEDIUM, HIGH
+    LOW(0, 54),
+    MEDIUM(55, 69),
+    HIGH(70, Integer.MAX_VALUE);
+
+    private final int minGi;
+    private final int maxGi;
+
+    GlycemicIndexType(int minGi, int maxGi) {
+        this.minGi = minGi;
+        this.maxGi = maxGi;
+    }
 }
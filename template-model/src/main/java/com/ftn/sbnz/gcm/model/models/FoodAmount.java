@@ -3,11 +3,12 @@ package com.ftn.sbnz.gcm.model.models;
 import lombok.Data;
 
 import javax.persistence.*;
+import java.io.Serializable;
 import java.util.UUID;
 
 @Entity
 @Data
-public class FoodAmount {
+public class FoodAmount implements Serializable {
     @Id
     @GeneratedValue
     private UUID id;
@@ -0,0 +1,16 @@
+package com.ftn.sbnz.gcm.model.models;
+
+import java.util.List;
+
+/**
+ * Food catalog the suggestion rules query through the "foodCatalog" global,
+ * instead of every food being a fact in each session.
+ */
+public interface FoodCatalog {
+
+    /**
+     * Foods within the constraint's carbs range, at most its fats, with a glycemic index in its group.
+     * @param limit maximum number of foods returned
+     */
+    List<Food> find(FoodConstraint constraint, int limit);
+}
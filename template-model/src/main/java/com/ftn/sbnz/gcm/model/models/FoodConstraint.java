@@ -6,11 +6,13 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
 
+import java.io.Serializable;
+
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @ToString
-public class FoodConstraint {
+public class FoodConstraint implements Serializable {
     private double minCarbs;
     private double maxCarbs;
     private double maxFats;
@@ -6,12 +6,14 @@ import lombok.NoArgsConstructor;
 import org.kie.api.definition.type.Role;
 import org.kie.api.definition.type.Timestamp;
 
+import java.io.Serializable;
+
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Role(Role.Type.EVENT)
 @Timestamp("timestamp")
-public class GlucoseMeasurement {
+public class GlucoseMeasurement implements Serializable {
     private double value;
     private long timestamp;
 }
@@ -0,0 +1,19 @@
+package com.ftn.sbnz.gcm.model.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * The newest glucose reading of a session. There is exactly one, kept up to date with update()
+ * by RuleEngineSession, so rules can match "the latest reading" without joining all readings.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LatestGlucose implements Serializable {
+    private double value;
+    private long timestamp;
+}
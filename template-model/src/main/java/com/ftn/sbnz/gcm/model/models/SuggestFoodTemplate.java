@@ -11,6 +11,4 @@ import lombok.NoArgsConstructor;
 public class SuggestFoodTemplate {
     private String name;
     private GlycemicIndexType giType;
-    // Drools constraint fragment for Food.glycemicIndex depending on GI group
-    private String giCondition;
 }
@@ -11,7 +11,5 @@ import lombok.NoArgsConstructor;
 public class SuggestNoFoodTemplate {
     private String name;
     private GlycemicIndexType giType;
-    // Drools constraint fragment for Food.glycemicIndex depending on GI group
-    private String giCondition;
     private String message;
 }
@@ -8,9 +8,10 @@ import org.hibernate.annotations.GenericGenerator;
 
 /**
  * Base event with common fields. Subclasses add type-specific columns.
+ * Indexed on (at, id), the order and the keyset of timeline pages.
  */
 @Entity
-@Table(name = "events")
+@Table(name = "events", indexes = @Index(name = "events_at_id", columnList = "at, id"))
 @Inheritance(strategy = InheritanceType.JOINED)
 @DiscriminatorColumn(name = "event_type", length = 16)
 @Getter @Setter
@@ -3,14 +3,27 @@ package com.ftn.sbnz.gcm.model.models;
 import com.ftn.sbnz.gcm.model.enums.TrendType;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 
+import java.io.Serializable;
+
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
-public class Trend {
+public class Trend implements Serializable {
     private TrendType direction;
     private int strength;
+    /**
+     * netDelta of the TrendSignal it was classified from, what trend hysteresis is measured on.
+     * Not part of equality: insertLogical keeps one Trend per direction and strength, whatever the delta.
+     */
+    @EqualsAndHashCode.Exclude
+    private double delta;
+
+    public Trend(TrendType direction, int strength) {
+        this(direction, strength, 0);
+    }
 
     public String toArrow() {
         switch (direction) {
@@ -0,0 +1,27 @@
+package com.ftn.sbnz.gcm.model.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.io.Serializable;
+
+/**
+ * Aggregated movement of the glucose window, classified into a {@link Trend} by the trend-classify rules.
+ * Compared by identity, like the DRL declared type it replaces.
+ */
+@Getter
+@Setter
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+public class TrendSignal implements Serializable {
+    /** Weighted delta: 60% of the last three readings' change, 40% of the whole window's. */
+    private double netDelta;
+    /** Largest jump between two consecutive readings. */
+    private double maxDelta;
+    /** Readings in the window. */
+    private int samples;
+}
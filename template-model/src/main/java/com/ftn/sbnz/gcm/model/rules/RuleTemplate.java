@@ -0,0 +1,87 @@
+package com.ftn.sbnz.gcm.model.rules;
+
+import com.ftn.sbnz.gcm.model.enums.ActivityIntensity;
+import com.ftn.sbnz.gcm.model.enums.GlycemicIndexType;
+import com.ftn.sbnz.gcm.model.enums.TrendType;
+import com.ftn.sbnz.gcm.model.models.FoodRuleTemplate;
+import com.ftn.sbnz.gcm.model.models.SuggestFoodTemplate;
+import com.ftn.sbnz.gcm.model.models.SuggestNoFoodTemplate;
+import com.ftn.sbnz.gcm.model.models.TrendClassifyTemplate;
+import lombok.Getter;
+
+/**
+ * Rule templates of gcm-kjar together with the table each one is expanded from.
+ */
+@Getter
+public enum RuleTemplate {
+
+    FOOD_SUGGESTION("template.drt", "template-data.csv", "food-suggestion.drl", ",") {
+        @Override
+        Object parseRow(String[] parts) {
+            return new FoodRuleTemplate(
+                Integer.parseInt(parts[0]),
+                Double.parseDouble(parts[1]),
+                Double.parseDouble(parts[2]),
+                ActivityIntensity.valueOf(parts[3]),
+                Double.parseDouble(parts[4]),
+                Double.parseDouble(parts[5]),
+                Double.parseDouble(parts[6]),
+                GlycemicIndexType.valueOf(parts[7])
+            );
+        }
+    },
+
+    TREND_CLASSIFY("trend-classify.drt", "trend-classify.csv", "trend-classify.drl", "\\|") {
+        @Override
+        Object parseRow(String[] parts) {
+            return new TrendClassifyTemplate(
+                parts[0],
+                parts[1],
+                TrendType.valueOf(parts[2]),
+                Integer.parseInt(parts[3])
+            );
+        }
+    },
+
+    SUGGEST_NO_FOOD("suggest-no-food.drt", "suggest-no-food.csv", "suggest-no-food.drl", "\\|") {
+        @Override
+        Object parseRow(String[] parts) {
+            return new SuggestNoFoodTemplate(
+                parts[0],
+                GlycemicIndexType.valueOf(parts[1]),
+                parts[2]
+            );
+        }
+    },
+
+    SUGGEST_FOOD("suggest-food.drt", "suggest-food.csv", "suggest-food.drl", "\\|") {
+        @Override
+        Object parseRow(String[] parts) {
+            return new SuggestFoodTemplate(
+                parts[0],
+                GlycemicIndexType.valueOf(parts[1])
+            );
+        }
+    };
+
+    private final String templateFile;
+    private final String dataFile;
+    private final String outputFile;
+    private final String separator;
+
+    RuleTemplate(String templateFile, String dataFile, String outputFile, String separator) {
+        this.templateFile = templateFile;
+        this.dataFile = dataFile;
+        this.outputFile = outputFile;
+        this.separator = separator;
+    }
+
+    abstract Object parseRow(String[] parts);
+
+    public static RuleTemplate forFile(String fileName) {
+        for (RuleTemplate t : values()) {
+            if (t.templateFile.equals(fileName) || t.dataFile.equals(fileName)) return t;
+        }
+        return null;
+    }
+}
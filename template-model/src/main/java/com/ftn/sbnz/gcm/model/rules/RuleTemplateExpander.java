@@ -0,0 +1,121 @@
+package com.ftn.sbnz.gcm.model.rules;
+
+import org.drools.template.ObjectDataCompiler;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Expands the rule templates into plain DRL.
+ * Runs at kjar build time (see gcm-kjar pom.xml) and at runtime when the service compiles rules itself.
+ */
+public class RuleTemplateExpander {
+
+    public static final String BASE_RULES = "basic.drl";
+    // Only the copy in the kbase package is packaged, the kjar leaves the raw one out of its resources
+    private static final String PACKAGED_BASE_RULES = "/com/ftn/sbnz/gcm/rules/" + BASE_RULES;
+
+    public interface ResourceOpener {
+        InputStream open(String fileName) throws IOException;
+    }
+
+    private final ResourceOpener opener;
+
+    public RuleTemplateExpander(ResourceOpener opener) {
+        this.opener = opener;
+    }
+
+    /** Reads templates and tables from the /rules folder on the classpath, the base rules from the kbase package. */
+    public static RuleTemplateExpander fromClasspath() {
+        return new RuleTemplateExpander(fileName -> {
+            String path = BASE_RULES.equals(fileName) ? PACKAGED_BASE_RULES : "/rules/" + fileName;
+            InputStream in = RuleTemplateExpander.class.getResourceAsStream(path);
+            if (in == null) throw new IOException("Missing rule resource " + path);
+            return in;
+        });
+    }
+
+    public static RuleTemplateExpander fromDirectory(Path dir) {
+        return new RuleTemplateExpander(fileName -> Files.newInputStream(dir.resolve(fileName)));
+    }
+
+    /** Same sources, except the table of the given template, which is read from {@code table}. */
+    public RuleTemplateExpander withData(RuleTemplate template, byte[] table) {
+        return new RuleTemplateExpander(fileName -> fileName.equals(template.getDataFile())
+                ? new ByteArrayInputStream(table)
+                : opener.open(fileName));
+    }
+
+    /** Expanded DRL of every template, keyed by output file name. */
+    public Map<String, String> expandAll() {
+        Map<String, String> drls = new LinkedHashMap<>();
+        for (RuleTemplate template : RuleTemplate.values()) {
+            drls.put(template.getOutputFile(), expand(template));
+        }
+        return drls;
+    }
+
+    public String expand(RuleTemplate template) {
+        try (InputStream drt = opener.open(template.getTemplateFile())) {
+            List<Object> data = loadData(template);
+            ObjectDataCompiler converter = new ObjectDataCompiler();
+            return converter.compile(data, drt);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public String baseRules() {
+        try (InputStream in = opener.open(BASE_RULES)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private List<Object> loadData(RuleTemplate template) throws IOException {
+        List<Object> rows = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(opener.open(template.getDataFile()), StandardCharsets.UTF_8))) {
+            String line;
+            reader.readLine(); // Skip header
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) continue;
+                rows.add(template.parseRow(line.split(template.getSeparator())));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Build-time entry point: expands every template found in {@code args[0]}
+     * and writes the DRL, together with the base rules, into {@code args[1]}.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            throw new IllegalArgumentException("Usage: RuleTemplateExpander <rules-dir> <output-dir>");
+        }
+        Path source = Paths.get(args[0]);
+        Path output = Paths.get(args[1]);
+        Files.createDirectories(output);
+
+        RuleTemplateExpander expander = fromDirectory(source);
+        for (Map.Entry<String, String> drl : expander.expandAll().entrySet()) {
+            Files.write(output.resolve(drl.getKey()), drl.getValue().getBytes(StandardCharsets.UTF_8));
+        }
+        Files.copy(source.resolve(BASE_RULES), output.resolve(BASE_RULES), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
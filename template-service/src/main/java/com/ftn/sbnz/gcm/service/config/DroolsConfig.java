@@ -1,21 +1,19 @@
 package com.ftn.sbnz.gcm.service.config;
 
 import org.kie.api.KieServices;
-import org.kie.api.builder.KieScanner;
 import org.kie.api.runtime.KieContainer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+/**
+ * Rule tables are reloaded in place by RuleReloader, the kjar itself is not rescanned.
+ */
 @Configuration
 public class DroolsConfig {
 
     @Bean
     public KieContainer kieContainer() {
         KieServices ks = KieServices.Factory.get();
-        KieContainer kContainer = ks.newKieContainer(ks.newReleaseId("com.ftn.sbnz", "gcm-kjar", "0.0.1-SNAPSHOT"));
-        KieScanner kScanner = ks.newKieScanner(kContainer);
-        kScanner.start(10_000);
-
-        return kContainer;
+        return ks.newKieContainer(ks.newReleaseId("com.ftn.sbnz", "gcm-kjar", "0.0.1-SNAPSHOT"));
     }
 }
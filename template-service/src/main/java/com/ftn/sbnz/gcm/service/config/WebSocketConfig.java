@@ -1,6 +1,7 @@
 package com.ftn.sbnz.gcm.service.config;
 
 import com.ftn.sbnz.gcm.service.ws.GlucoseHandler;
+import com.ftn.sbnz.gcm.service.ws.StreamHandler;
 import com.ftn.sbnz.gcm.service.ws.SuggestionHandler;
 import com.ftn.sbnz.gcm.service.ws.TrendHandler;
 import org.springframework.context.annotation.Configuration;
@@ -13,9 +14,10 @@ public class WebSocketConfig implements WebSocketConfigurer {
     private final GlucoseHandler glucoseHandler;
     private final SuggestionHandler suggestionHandler;
     private  final TrendHandler trendHandler;
+    private final StreamHandler streamHandler;
 
-    public WebSocketConfig(GlucoseHandler g, SuggestionHandler s, TrendHandler t) {
-        this.glucoseHandler = g; this.suggestionHandler = s; this.trendHandler = t;
+    public WebSocketConfig(GlucoseHandler g, SuggestionHandler s, TrendHandler t, StreamHandler st) {
+        this.glucoseHandler = g; this.suggestionHandler = s; this.trendHandler = t; this.streamHandler = st;
     }
 
     @Override
@@ -26,5 +28,8 @@ public class WebSocketConfig implements WebSocketConfigurer {
                 .setAllowedOriginPatterns("*");     // allow all
         registry.addHandler(trendHandler, "/ws/trends")
                 .setAllowedOriginPatterns("*");     // allow all
+        // All three above in one binary stream, sub-protocol gcm.v1.bin
+        registry.addHandler(streamHandler, "/ws/stream")
+                .setAllowedOriginPatterns("*");     // allow all
     }
 }
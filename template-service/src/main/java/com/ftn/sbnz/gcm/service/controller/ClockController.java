@@ -15,7 +15,7 @@ public class ClockController {
 
     @GetMapping("/start" )
     public ClockDto getStartTime() {
-        return new ClockDto(clockService.getT0Real());
+        return new ClockDto(clockService.getT0Real(), clockService.getOffset());
     }
 
 }
@@ -1,9 +1,16 @@
 package com.ftn.sbnz.gcm.service.controller;
 
 import com.ftn.sbnz.gcm.service.dto.FoodDtos;
+import com.ftn.sbnz.gcm.service.service.FoodCatalogCache;
+import com.ftn.sbnz.gcm.service.service.FoodImportService;
 import com.ftn.sbnz.gcm.service.service.FoodService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 
@@ -12,14 +19,40 @@ import java.util.List;
 @RequiredArgsConstructor
 public class FoodController {
     private final FoodService foodService;
+    private final FoodCatalogCache foodCatalogCache;
+    private final FoodImportService foodImportService;
 
+    /** The pre-serialized catalog; a request whose If-None-Match still matches gets a 304 without a body. */
     @GetMapping
-    public List<FoodDtos.FoodDto> getAllFoods() {
-        return foodService.getAllFoods();
+    public ResponseEntity<byte[]> getAllFoods(WebRequest request) {
+        FoodCatalogCache.Snapshot catalog = foodCatalogCache.get();
+        if (request.checkNotModified(catalog.getEtag())) return null;
+        return ResponseEntity.ok()
+                .eTag(catalog.getEtag())
+                .cacheControl(CacheControl.noCache())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(catalog.getBody());
     }
 
     @PostMapping
     public FoodDtos.FoodDto createFood(@RequestBody FoodDtos.FoodCreateDto dto) {
         return new FoodDtos.FoodDto(foodService.create(dto));
     }
+
+    /** Starts importing a dump from food.import.dir, poll the returned import for progress. */
+    @PostMapping("/import")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public FoodDtos.FoodImportDto importDump(@RequestParam String file) {
+        return foodImportService.start(file);
+    }
+
+    @GetMapping("/import")
+    public List<FoodDtos.FoodImportDto> imports() {
+        return foodImportService.list();
+    }
+
+    @GetMapping("/import/{id}")
+    public FoodDtos.FoodImportDto importStatus(@PathVariable String id) {
+        return foodImportService.status(id);
+    }
 }
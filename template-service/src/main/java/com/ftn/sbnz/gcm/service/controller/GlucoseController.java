@@ -1,39 +1,86 @@
 package com.ftn.sbnz.gcm.service.controller;
 
-import com.ftn.sbnz.gcm.model.models.GlucoseContext;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ftn.sbnz.gcm.model.models.GlucoseMeasurement;
+import com.ftn.sbnz.gcm.service.dto.GlucoseBatchStatsDto;
+import com.ftn.sbnz.gcm.service.ingest.IngestionPipeline;
 import com.ftn.sbnz.gcm.service.rules.GlucoseContextBuilder;
 import com.ftn.sbnz.gcm.service.service.ClockService;
-import com.ftn.sbnz.gcm.service.service.RuleEngineSession;
-import com.ftn.sbnz.gcm.service.ws.GlucoseHandler;
+import com.ftn.sbnz.gcm.service.service.GlucoseBatchService;
+import com.ftn.sbnz.gcm.service.service.RuleEngineSessionManager;
+import com.ftn.sbnz.gcm.service.store.GlucoseStore;
 import com.ftn.sbnz.gcm.service.ws.GlucoseMessage;
 import lombok.RequiredArgsConstructor;
-import org.springframework.web.bind.annotation.PostMapping;
-import org.springframework.web.bind.annotation.RequestBody;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
 
 @RestController
 @RequestMapping("/api/glucose")
 @RequiredArgsConstructor
 public class GlucoseController {
 
-    private final GlucoseHandler glucoseHandler;
-    private final RuleEngineSession ruleEngine;
+    private final IngestionPipeline ingestionPipeline;
+    private final GlucoseBatchService batchService;
     private final GlucoseContextBuilder ctxBuilder;
     private final ClockService clockService;
+    private final ObjectMapper objectMapper;
+    private final GlucoseStore glucoseStore;
 
     @PostMapping
-    public void receiveGlucoseData(@RequestBody GlucoseMessage message) {
+    public void receiveGlucoseData(@RequestBody GlucoseMessage message,
+                                   @RequestParam(name = "patientId", defaultValue = RuleEngineSessionManager.DEFAULT_PATIENT) String patientId) {
         message.setT(clockService.now());
-        glucoseHandler.send(message);
 
         double mmol = message.getMmol();
         long   tMillis = message.getT();
 
         GlucoseMeasurement gm = new GlucoseMeasurement(mmol, tMillis);
-        System.out.println(gm);
 
-        ruleEngine.evaluateAndPublish(gm, true);
+        // Broadcast and rule evaluation happen on the patient's shard
+        ingestionPipeline.enqueue(patientId, gm);
+    }
+
+    /** Readings keep their own timestamps, unlike single POSTs which are stamped on arrival. */
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public GlucoseBatchStatsDto receiveBatch(@RequestBody List<GlucoseMessage> messages,
+                                             @RequestParam(name = "patientId", defaultValue = RuleEngineSessionManager.DEFAULT_PATIENT) String patientId) {
+        return batchService.ingest(patientId, messages.iterator());
+    }
+
+    /** One GlucoseMessage per line, parsed while the body streams in. */
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public GlucoseBatchStatsDto receiveNdjson(InputStream body,
+                                              @RequestParam(name = "patientId", defaultValue = RuleEngineSessionManager.DEFAULT_PATIENT) String patientId) throws IOException {
+        try (var messages = objectMapper.readerFor(GlucoseMessage.class).<GlucoseMessage>readValues(body)) {
+            return batchService.ingest(patientId, messages);
+        }
+    }
+
+    /**
+     * Stored readings with {@code from <= t <= to} as {@code [{"t":..,"mmol":..},..]}, at most {@code limit} of them.
+     * Written straight from the segment mappings, without a DTO per reading.
+     */
+    @GetMapping(value = "/range", produces = MediaType.APPLICATION_JSON_VALUE)
+    public String range(@RequestParam(name = "patientId", defaultValue = RuleEngineSessionManager.DEFAULT_PATIENT) String patientId,
+                        @RequestParam long from,
+                        @RequestParam long to,
+                        @RequestParam(defaultValue = "10000") int limit) {
+        if (!glucoseStore.isEnabled())
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "The glucose store is disabled.");
+        if (from > to || limit <= 0)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Expected from <= to and a positive limit.");
+
+        StringBuilder json = new StringBuilder(4096).append('[');
+        glucoseStore.scan(patientId, from, to, limit, (t, mmol) -> {
+            if (json.length() > 1) json.append(',');
+            json.append("{\"t\":").append(t).append(",\"mmol\":").append(mmol).append('}');
+        });
+        return json.append(']').toString();
     }
 }
@@ -0,0 +1,39 @@
+package com.ftn.sbnz.gcm.service.controller;
+
+import com.ftn.sbnz.gcm.model.models.GlucoseTrendConfig;
+import com.ftn.sbnz.gcm.service.dto.ReplayDtos;
+import com.ftn.sbnz.gcm.service.replay.ReplayEngine;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+
+@RestController
+@RequestMapping("/api/replay")
+@RequiredArgsConstructor
+public class ReplayController {
+    private final ReplayEngine replayEngine;
+
+    /**
+     * Replays the recorded traces matching {@code traces} and returns once all of them are done.
+     * The body, if any, overrides the trend thresholds for this run only.
+     */
+    @PostMapping
+    public ReplayDtos.ReplayReportDto replay(@RequestParam(defaultValue = "*.ndjson") String traces,
+                                             @RequestBody(required = false) GlucoseTrendConfig trendConfig) throws IOException {
+        return replayEngine.replay(traces, trendConfig);
+    }
+
+    /** Same over the readings the glucose store holds for the patient between {@code from} and {@code to}. */
+    @PostMapping("/stored")
+    public ReplayDtos.ReplayReportDto replayStored(@RequestParam String patientId,
+                                                   @RequestParam(defaultValue = "0") long from,
+                                                   @RequestParam(defaultValue = "" + Long.MAX_VALUE) long to,
+                                                   @RequestBody(required = false) GlucoseTrendConfig trendConfig) throws IOException {
+        return replayEngine.replayStored(patientId, from, to, trendConfig);
+    }
+}
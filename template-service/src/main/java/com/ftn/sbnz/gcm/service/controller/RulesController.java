@@ -0,0 +1,51 @@
+package com.ftn.sbnz.gcm.service.controller;
+
+import com.ftn.sbnz.gcm.model.rules.RuleTemplate;
+import com.ftn.sbnz.gcm.service.dto.RuleReloadDto;
+import com.ftn.sbnz.gcm.service.dto.RuleStatsDto;
+import com.ftn.sbnz.gcm.service.rules.KieBaseHolder;
+import com.ftn.sbnz.gcm.service.rules.RuleReloader;
+import com.ftn.sbnz.gcm.service.service.RuleEngineSessionManager;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/rules")
+@RequiredArgsConstructor
+public class RulesController {
+    private final KieBaseHolder kieBaseHolder;
+    private final RuleEngineSessionManager sessionManager;
+    private final RuleReloader ruleReloader;
+
+    @GetMapping("/stats")
+    public RuleStatsDto getStats() {
+        return new RuleStatsDto(
+                kieBaseHolder.getCompileMillis(),
+                kieBaseHolder.getLastSessionMicros(),
+                kieBaseHolder.getSessionsCreated());
+    }
+
+    @GetMapping("/facts")
+    public Map<String, Long> getFactCounts(
+            @RequestParam(defaultValue = RuleEngineSessionManager.DEFAULT_PATIENT) String patientId) {
+        return sessionManager.getFactCounts(patientId);
+    }
+
+    /**
+     * Recompiles one template and swaps it into the running rules.
+     * With a body, the body replaces the template's table (same format as the .csv file).
+     */
+    @PostMapping("/reload/{template}")
+    public RuleReloadDto reload(@PathVariable RuleTemplate template,
+                                @RequestBody(required = false) byte[] table) {
+        return ruleReloader.reload(template, table);
+    }
+}
@@ -1,37 +1,72 @@
 package com.ftn.sbnz.gcm.service.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ftn.sbnz.gcm.service.dto.TimelineEventDtos;
+import com.ftn.sbnz.gcm.service.dto.TimelineImportStatsDto;
+import com.ftn.sbnz.gcm.service.replay.TraceRecord;
+import com.ftn.sbnz.gcm.service.service.RuleEngineSessionManager;
 import com.ftn.sbnz.gcm.service.service.TimelineEventService;
+import com.ftn.sbnz.gcm.service.service.TimelineImportService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 
 import javax.validation.Valid;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 
 @RestController @RequestMapping("/api/events")
 @RequiredArgsConstructor @CrossOrigin
 public class TimelineEventController {
     private final TimelineEventService service;
+    private final TimelineImportService importService;
+    private final ObjectMapper objectMapper;
 
     @GetMapping
-    public TimelineEventDtos.TimelineEventListDto list(
+    public TimelineEventDtos.TimelinePageDto list(
             @RequestParam(name = "from", required = false) Long from,
-            @RequestParam(name = "to", required = false) Long to
+            @RequestParam(name = "to", required = false) Long to,
+            @RequestParam(name = "after", required = false) String after,
+            @RequestParam(name = "limit", defaultValue = "500") int limit
     ) {
-        return service.list(from, to);
+        return service.list(from, to, after, limit);
     }
 
     @PostMapping("/food")
-    public TimelineEventDtos.FoodEventDto createFood(@RequestBody @Valid TimelineEventDtos.FoodEventDto in) {
-         return service.create(in);
+    public TimelineEventDtos.FoodEventDto createFood(@RequestBody @Valid TimelineEventDtos.FoodEventDto in,
+            @RequestParam(name = "patientId", defaultValue = RuleEngineSessionManager.DEFAULT_PATIENT) String patientId) {
+         return service.create(patientId, in);
     }
 
     @PostMapping("/insulin")
-    public TimelineEventDtos.InsulinEventDto createInsulin(@RequestBody @Valid TimelineEventDtos.InsulinEventDto in) {
-        return service.create(in);
+    public TimelineEventDtos.InsulinEventDto createInsulin(@RequestBody @Valid TimelineEventDtos.InsulinEventDto in,
+            @RequestParam(name = "patientId", defaultValue = RuleEngineSessionManager.DEFAULT_PATIENT) String patientId) {
+        return service.create(patientId, in);
     }
 
     @PostMapping("/activity")
-    public TimelineEventDtos.ActivityEventDto createActivity(@RequestBody @Valid TimelineEventDtos.ActivityEventDto in) {
-        return service.create(in);
+    public TimelineEventDtos.ActivityEventDto createActivity(@RequestBody @Valid TimelineEventDtos.ActivityEventDto in,
+            @RequestParam(name = "patientId", defaultValue = RuleEngineSessionManager.DEFAULT_PATIENT) String patientId) {
+        return service.create(patientId, in);
+    }
+
+    /** Bulk import, one trace record per line; events keep their own timestamps. */
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public TimelineImportStatsDto importNdjson(InputStream body,
+            @RequestParam(name = "patientId", defaultValue = RuleEngineSessionManager.DEFAULT_PATIENT) String patientId) throws IOException {
+        try (var records = objectMapper.readerFor(TraceRecord.class).<TraceRecord>readValues(body)) {
+            return importService.importEvents(patientId, records);
+        }
+    }
+
+    @PostMapping(value = "/import", consumes = "text/csv")
+    public TimelineImportStatsDto importCsv(InputStream body,
+            @RequestParam(name = "patientId", defaultValue = RuleEngineSessionManager.DEFAULT_PATIENT) String patientId) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            return importService.importEvents(patientId, TimelineImportService.readCsv(reader));
+        }
     }
 }
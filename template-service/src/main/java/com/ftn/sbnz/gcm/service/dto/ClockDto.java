@@ -7,8 +7,11 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 public class ClockDto {
     private long t0Real;
+    // Simulated millis the server clock runs ahead of t0Real + elapsed * speed
+    private long offset;
 
-    public ClockDto(long t0Real) {
+    public ClockDto(long t0Real, long offset) {
         this.t0Real = t0Real;
+        this.offset = offset;
     }
 }
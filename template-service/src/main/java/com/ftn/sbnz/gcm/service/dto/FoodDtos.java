@@ -44,4 +44,20 @@ public class FoodDtos {
                     .build();
         }
     }
-}
\ No newline at end of file
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class FoodImportDto {
+        private String id;
+        private String file;
+        /** RUNNING, DONE or FAILED. */
+        private String state;
+        private long read;
+        private long written;
+        private long rejected;
+        private long millis;
+        private long rowsPerSecond;
+        private String error;
+    }
+}
@@ -0,0 +1,18 @@
+package com.ftn.sbnz.gcm.service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GlucoseBatchStatsDto {
+    private int received;
+    private Long firstT;
+    private Long lastT;
+    private int rulesFired;
+    private long parseMillis;
+    private long engineMillis;
+    private long readingsPerSecond;
+}
@@ -0,0 +1,40 @@
+package com.ftn.sbnz.gcm.service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+public class ReplayDtos {
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ReplayTraceDto {
+        private String patientId;
+        private String output;
+        private long readings;
+        private long events;
+        /** Records before the session time, or with unknown foods, that were not replayed. */
+        private long skipped;
+        private long trends;
+        private long suggestions;
+        private Long firstT;
+        private Long lastT;
+        private long millis;
+        /** Set when the trace could not be replayed to the end. */
+        private String error;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ReplayReportDto {
+        private int traces;
+        private long records;
+        private long emissions;
+        private long millis;
+        private long recordsPerSecond;
+        private List<ReplayTraceDto> results;
+    }
+}
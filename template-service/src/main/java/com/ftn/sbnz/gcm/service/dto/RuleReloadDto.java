@@ -0,0 +1,24 @@
+package com.ftn.sbnz.gcm.service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RuleReloadDto {
+    private String template;
+    private String packageName;
+    private List<String> added;
+    private List<String> removed;
+    // Rules whose expanded text changed
+    private List<String> updated;
+    // Rules compiled again from the same text
+    private List<String> kept;
+    private long compileMillis;
+    // Time all sessions were held while the package was swapped
+    private long swapMillis;
+}
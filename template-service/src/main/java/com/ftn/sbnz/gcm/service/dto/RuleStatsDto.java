@@ -0,0 +1,14 @@
+package com.ftn.sbnz.gcm.service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RuleStatsDto {
+    private long compileMillis;
+    private long lastSessionMicros;
+    private long sessionsCreated;
+}
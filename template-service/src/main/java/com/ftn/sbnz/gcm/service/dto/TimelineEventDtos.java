@@ -12,10 +12,17 @@ import com.ftn.sbnz.gcm.model.models.InsulinEvent;
 import lombok.*;
 
 public class TimelineEventDtos {
+    /** What every event of a timeline page has, the concrete DTO adds the type specific fields. */
+    public interface TimelineEventDto {
+        UUID getId();
+        EventType getType();
+        long getAt();
+    }
+
     @Data
     @NoArgsConstructor
     @AllArgsConstructor
-    public static class FoodEventDto {
+    public static class FoodEventDto implements TimelineEventDto {
         private UUID id;
         private EventType type = EventType.FOOD;
         private long at;
@@ -32,7 +39,7 @@ public class TimelineEventDtos {
     @Data
     @NoArgsConstructor
     @AllArgsConstructor
-    public static class InsulinEventDto {
+    public static class InsulinEventDto implements TimelineEventDto {
         private UUID id;
         private EventType type = EventType.INSULIN;
         private long at;
@@ -46,7 +53,7 @@ public class TimelineEventDtos {
     @Data
     @NoArgsConstructor
     @AllArgsConstructor
-    public static class ActivityEventDto {
+    public static class ActivityEventDto implements TimelineEventDto {
         private UUID id;
         private EventType type = EventType.ACTIVITY;
         private long at;
@@ -69,9 +76,10 @@ public class TimelineEventDtos {
     @Data
     @NoArgsConstructor
     @AllArgsConstructor
-    public static class TimelineEventListDto {
-        private List<FoodEventDto> food;
-        private List<InsulinEventDto> insulin;
-        private List<ActivityEventDto> activity;
+    public static class TimelinePageDto {
+        /** Ordered by time, then id. */
+        private List<TimelineEventDto> events;
+        /** Cursor of the next page, passed back as {@code after}; null on the last page. */
+        private String next;
     }
 }
@@ -0,0 +1,20 @@
+package com.ftn.sbnz.gcm.service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TimelineImportStatsDto {
+    private int imported;
+    // Glucose lines, which belong to /api/glucose/batch
+    private int skipped;
+    private Long firstAt;
+    private Long lastAt;
+    private long parseMillis;
+    private long persistMillis;
+    private long engineMillis;
+    private long eventsPerSecond;
+}
@@ -0,0 +1,13 @@
+package com.ftn.sbnz.gcm.service.ingest;
+
+/**
+ * What {@link IngestionPipeline} does when a patient's inbox is full.
+ */
+public enum BackpressurePolicy {
+    /** Refuse the event, the caller gets 503. */
+    REJECT,
+    /** Wait for free space up to ingest.block-timeout-ms, then refuse. */
+    BLOCK,
+    /** Keep only the newest glucose reading that did not fit. Timeline events block instead. */
+    COALESCE
+}
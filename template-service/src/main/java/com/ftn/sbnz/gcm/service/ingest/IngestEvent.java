@@ -0,0 +1,23 @@
+package com.ftn.sbnz.gcm.service.ingest;
+
+import com.ftn.sbnz.gcm.model.models.GlucoseMeasurement;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A fact waiting in a patient's inbox, stamped with the time it was enqueued.
+ */
+@Getter
+@AllArgsConstructor
+public class IngestEvent {
+    private final Object fact;
+    private final long enqueuedNanos;
+
+    public static IngestEvent of(Object fact) {
+        return new IngestEvent(fact, System.nanoTime());
+    }
+
+    public boolean isGlucose() {
+        return fact instanceof GlucoseMeasurement;
+    }
+}
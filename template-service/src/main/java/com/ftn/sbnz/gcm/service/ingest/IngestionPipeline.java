@@ -0,0 +1,197 @@
+package com.ftn.sbnz.gcm.service.ingest;
+
+import com.ftn.sbnz.gcm.model.models.GlucoseMeasurement;
+import com.ftn.sbnz.gcm.service.service.GlucoseHistory;
+import com.ftn.sbnz.gcm.service.service.RuleEngineSession;
+import com.ftn.sbnz.gcm.service.service.RuleEngineSessionManager;
+import com.ftn.sbnz.gcm.service.store.GlucoseStore;
+import com.ftn.sbnz.gcm.service.ws.GlucoseHandler;
+import com.ftn.sbnz.gcm.service.ws.GlucoseMessage;
+import com.ftn.sbnz.gcm.service.ws.StreamHandler;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+
+/**
+ * Decouples request threads from the rule engine.
+ * Producers only enqueue into the patient's {@link SessionInbox}; a drain task on the patient's shard
+ * inserts what is queued and fires the rules once per batch.
+ * A drain stops after {@code ingest.max-batches-per-drain} batches and queues itself again behind the work
+ * of the other patients on the shard, so one busy patient cannot starve them.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class IngestionPipeline {
+
+    private final RuleEngineSessionManager sessionManager;
+    private final GlucoseHandler glucoseHandler;
+    private final GlucoseHistory glucoseHistory;
+    private final GlucoseStore glucoseStore;
+    private final StreamHandler streamHandler;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${ingest.capacity:4096}")
+    private int capacity;
+
+    @Value("${ingest.batch-size:256}")
+    private int batchSize;
+
+    @Value("${ingest.backpressure:BLOCK}")
+    private BackpressurePolicy backpressure;
+
+    @Value("${ingest.block-timeout-ms:1000}")
+    private long blockTimeoutMs;
+
+    @Value("${ingest.max-batches-per-drain:8}")
+    private int maxBatchesPerDrain;
+
+    private final Map<String, SessionInbox> inboxes = new ConcurrentHashMap<>();
+
+    private Timer enqueueToFire;
+    private DistributionSummary batchSizes;
+    private Counter rejected;
+    private Counter coalesced;
+
+    @PostConstruct
+    public void registerMeters() {
+        Gauge.builder("ingest.queue.depth", inboxes, m -> m.values().stream().mapToInt(SessionInbox::depth).sum())
+                .description("Events waiting for the rule engine, all patients")
+                .register(meterRegistry);
+        enqueueToFire = Timer.builder("ingest.enqueue.to.fire")
+                .description("Time from enqueue until the batch holding the event was fired")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        batchSizes = DistributionSummary.builder("ingest.batch.size")
+                .description("Events inserted per fireAllRules")
+                .register(meterRegistry);
+        rejected = Counter.builder("ingest.rejected").register(meterRegistry);
+        coalesced = Counter.builder("ingest.coalesced").register(meterRegistry);
+    }
+
+    /**
+     * Queues a fact for the patient's session.
+     * @throws ResponseStatusException 503 when the inbox is full and the backpressure policy gives up
+     */
+    public void enqueue(String patientId, Object fact) {
+        SessionInbox inbox = inboxes.computeIfAbsent(patientId, id -> new SessionInbox(id, capacity));
+        IngestEvent event = IngestEvent.of(fact);
+
+        if (!inbox.offer(event) && !handleFull(inbox, event)) {
+            rejected.increment();
+            throw new ResponseStatusException(SERVICE_UNAVAILABLE, "Ingestion queue of patient " + patientId + " is full.");
+        }
+        scheduleDrain(inbox);
+    }
+
+    private boolean handleFull(SessionInbox inbox, IngestEvent event) {
+        switch (backpressure) {
+            case COALESCE:
+                if (event.isGlucose()) {
+                    if (inbox.coalesce(event)) coalesced.increment();
+                    return true;
+                }
+                return offerBlocking(inbox, event);
+            case BLOCK:
+                return offerBlocking(inbox, event);
+            default:
+                return false;
+        }
+    }
+
+    private boolean offerBlocking(SessionInbox inbox, IngestEvent event) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(blockTimeoutMs);
+        scheduleDrain(inbox);
+        while (!inbox.offer(event)) {
+            if (System.nanoTime() - deadline > 0) return false;
+            LockSupport.parkNanos(50_000);
+        }
+        return true;
+    }
+
+    private void scheduleDrain(SessionInbox inbox) {
+        if (!inbox.tryScheduleDrain()) return;
+        AtomicBoolean started = new AtomicBoolean();
+        try {
+            sessionManager.execute(inbox.getPatientId(), engine -> {
+                started.set(true);
+                drain(inbox, engine);
+            }).whenComplete((ignored, e) -> {
+                if (e == null) return;
+                // Failed before drain ran, typically opening the session, so nothing cleared the flag
+                if (!started.get()) inbox.drainFinished();
+                log.error("Draining the inbox of patient {} failed, {} events wait for the next enqueue",
+                        inbox.getPatientId(), inbox.depth(), e);
+            });
+        } catch (RuntimeException e) {
+            // Shard rejected the task, it is shutting down
+            inbox.drainFinished();
+            throw e;
+        }
+    }
+
+    // Runs on the patient's shard
+    private void drain(SessionInbox inbox, RuleEngineSession engine) {
+        List<IngestEvent> batch = new ArrayList<>(batchSize);
+        try {
+            for (int batches = 0; batches < maxBatchesPerDrain && inbox.drain(batch::add, batchSize) > 0; batches++) {
+                fire(inbox.getPatientId(), engine, batch);
+                batch.clear();
+            }
+        } finally {
+            inbox.drainFinished();
+        }
+        // Left over after the cap, or enqueued after the last drain but before the flag was cleared
+        if (!inbox.isEmpty()) scheduleDrain(inbox);
+    }
+
+    /**
+     * Stores a reading and hands it to the chart history and the live clients.
+     * Every reading goes through here, whether it came in on its own or in a backfill.
+     */
+    public void publish(String patientId, GlucoseMeasurement gm) {
+        glucoseStore.append(patientId, gm.getTimestamp(), gm.getValue());
+        glucoseHistory.record(patientId, gm.getTimestamp(), gm.getValue());
+        glucoseHandler.send(patientId, new GlucoseMessage(gm.getTimestamp(), gm.getValue()));
+        streamHandler.glucose(patientId, gm.getTimestamp(), gm.getValue());
+    }
+
+    private void fire(String patientId, RuleEngineSession engine, List<IngestEvent> batch) {
+        List<Object> facts = new ArrayList<>(batch.size());
+        for (IngestEvent event : batch) {
+            facts.add(event.getFact());
+            if (event.isGlucose()) publish(patientId, (GlucoseMeasurement) event.getFact());
+        }
+
+        try {
+            engine.insertAll(facts);
+        } catch (RuntimeException e) {
+            log.error("Rule session of patient {} failed on a batch of {} events", patientId, facts.size(), e);
+            return;
+        }
+
+        long now = System.nanoTime();
+        for (IngestEvent event : batch) {
+            enqueueToFire.record(now - event.getEnqueuedNanos(), TimeUnit.NANOSECONDS);
+        }
+        batchSizes.record(batch.size());
+    }
+}
@@ -0,0 +1,87 @@
+package com.ftn.sbnz.gcm.service.ingest;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded lock-free queue for many producers and a single consumer.
+ * Every slot carries a sequence number telling whether it is free for the producer
+ * that claimed it or holds a value for the consumer (D. Vyukov's bounded queue).
+ */
+public class MpscRingBuffer<E> {
+
+    private final Object[] buffer;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+
+    public MpscRingBuffer(int requestedCapacity) {
+        int capacity = requestedCapacity <= 2 ? 2 : Integer.highestOneBit(requestedCapacity - 1) << 1;
+        buffer = new Object[capacity];
+        sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        mask = capacity - 1;
+    }
+
+    /** @return false if the buffer is full */
+    public boolean offer(E e) {
+        long pos = tail.get();
+        while (true) {
+            int idx = (int) (pos & mask);
+            long dif = sequences.get(idx) - pos;
+            if (dif == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    buffer[idx] = e;
+                    sequences.lazySet(idx, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (dif < 0) {
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    /** Consumer side only. */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long pos = head;
+        int idx = (int) (pos & mask);
+        if (sequences.get(idx) != pos + 1) return null;
+        E e = (E) buffer[idx];
+        buffer[idx] = null;
+        sequences.lazySet(idx, pos + mask + 1);
+        head = pos + 1;
+        return e;
+    }
+
+    /** Consumer side only. Hands at most {@code limit} elements to {@code sink}, returns how many. */
+    public int drain(Consumer<E> sink, int limit) {
+        int n = 0;
+        E e;
+        while (n < limit && (e = poll()) != null) {
+            sink.accept(e);
+            n++;
+        }
+        return n;
+    }
+
+    public int size() {
+        long size = tail.get() - head;
+        return (int) Math.max(0, Math.min(size, buffer.length));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+}
@@ -0,0 +1,62 @@
+package com.ftn.sbnz.gcm.service.ingest;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Events of one patient between the HTTP threads and the patient's rule session.
+ * Producers offer from any thread, only the drain task scheduled on the patient's shard consumes.
+ */
+class SessionInbox {
+    @Getter private final String patientId;
+    private final MpscRingBuffer<IngestEvent> queue;
+    // Newest glucose reading that did not fit under COALESCE, newer than everything queued
+    private final AtomicReference<IngestEvent> overflow = new AtomicReference<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    SessionInbox(String patientId, int capacity) {
+        this.patientId = patientId;
+        this.queue = new MpscRingBuffer<>(capacity);
+    }
+
+    /** Refuses while a coalesced reading waits, so nothing enqueued after it is fired before it. */
+    boolean offer(IngestEvent event) {
+        return overflow.get() == null && queue.offer(event);
+    }
+
+    /** @return true if an earlier overflowed reading was replaced */
+    boolean coalesce(IngestEvent event) {
+        return overflow.getAndSet(event) != null;
+    }
+
+    int drain(Consumer<IngestEvent> sink, int limit) {
+        int n = queue.drain(sink, limit);
+        if (n < limit) {
+            IngestEvent last = overflow.getAndSet(null);
+            if (last != null) {
+                sink.accept(last);
+                n++;
+            }
+        }
+        return n;
+    }
+
+    boolean isEmpty() {
+        return queue.isEmpty() && overflow.get() == null;
+    }
+
+    int depth() {
+        return queue.size() + (overflow.get() == null ? 0 : 1);
+    }
+
+    boolean tryScheduleDrain() {
+        return drainScheduled.compareAndSet(false, true);
+    }
+
+    void drainFinished() {
+        drainScheduled.set(false);
+    }
+}
@@ -0,0 +1,14 @@
+package com.ftn.sbnz.gcm.service.journal;
+
+import java.util.List;
+
+/**
+ * Receives every fact a session is about to insert, before it is inserted.
+ */
+public interface InputLog {
+
+    InputLog NONE = facts -> {};
+
+    /** Stores the facts as one batch. Returns once they are durable. */
+    void append(List<?> facts);
+}
@@ -0,0 +1,229 @@
+package com.ftn.sbnz.gcm.service.journal;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Snapshot and write-ahead log of one patient's session, in a directory of its own.
+ * The snapshot starts with the sequence number of the last record it contains,
+ * so records still in the log after a crash between snapshot and truncation are skipped on recovery.
+ * Only used from the patient's shard.
+ */
+@Slf4j
+public class PatientJournal implements InputLog {
+
+    static final String SNAPSHOT = "snapshot.bin";
+    static final String WAL = "wal.log";
+
+    @Getter private final String patientId;
+    private final Path dir;
+    private final int snapshotEvery;
+    private FileChannel wal;
+    private long lastSeq;
+    private int sinceSnapshot;
+    // Moved on by snapshotEvery after a failed snapshot, so a failing disk is not retried on every input
+    private int snapshotDueAt;
+
+    PatientJournal(String patientId, Path dir, int snapshotEvery) {
+        this.patientId = patientId;
+        this.dir = dir;
+        this.snapshotEvery = snapshotEvery;
+        this.snapshotDueAt = snapshotEvery;
+    }
+
+    /**
+     * Loads the newest snapshot, then hands over the records logged after it, one list per appended batch.
+     * @return false if there was nothing to recover
+     */
+    public boolean recover(SnapshotReader snapshotReader, TailReader tailReader) throws IOException, ClassNotFoundException {
+        Files.createDirectories(dir);
+        sinceSnapshot = 0;
+        snapshotDueAt = snapshotEvery;
+        long snapshotSeq = 0;
+        Path snapshot = dir.resolve(SNAPSHOT);
+        boolean recovered = false;
+        if (Files.exists(snapshot)) {
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(snapshot))) {
+                snapshotSeq = new DataInputStream(in).readLong();
+                snapshotReader.read(in);
+            }
+            recovered = true;
+        }
+        lastSeq = snapshotSeq;
+
+        List<List<Object>> batches = new ArrayList<>();
+        close();
+        wal = openWal();
+        ByteBuffer buffer = ByteBuffer.allocate((int) wal.size());
+        while (buffer.hasRemaining() && wal.read(buffer) >= 0) {}
+        buffer.flip();
+
+        List<Object> batch = new ArrayList<>();
+        WalCodec.Record record;
+        while ((record = WalCodec.read(buffer)) != null) {
+            lastSeq = Math.max(lastSeq, record.seq);
+            if (record.seq > snapshotSeq) {
+                batch.add(record.fact);
+                sinceSnapshot++;
+            }
+            if (record.endOfBatch && !batch.isEmpty()) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        // A torn write at the end of the log never reached the session, drop it
+        if (buffer.hasRemaining()) {
+            log.warn("Dropping {} bytes of incomplete log of patient {}", buffer.remaining(), patientId);
+            wal.truncate(buffer.position());
+        }
+        wal.position(buffer.position());
+        if (!batch.isEmpty()) batches.add(batch);
+        if (!batches.isEmpty()) {
+            tailReader.read(batches);
+            recovered = true;
+        }
+        return recovered;
+    }
+
+    /** Writes the whole batch with a single fsync. */
+    @Override
+    public void append(List<?> facts) {
+        if (facts.isEmpty()) return;
+        try {
+            if (wal == null) {
+                wal = openWal();
+                wal.position(wal.size());
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(facts.size() * 32);
+            DataOutputStream out = new DataOutputStream(bytes);
+            for (int i = 0; i < facts.size(); i++) {
+                WalCodec.write(out, lastSeq + 1 + i, facts.get(i), i == facts.size() - 1);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) wal.write(buffer);
+            wal.force(false);
+            lastSeq += facts.size();
+            sinceSnapshot += facts.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not log input of patient " + patientId, e);
+        }
+    }
+
+    public boolean isSnapshotDue() {
+        return sinceSnapshot >= snapshotDueAt;
+    }
+
+    /**
+     * Replaces the snapshot and empties the log, the new snapshot holds everything logged so far.
+     * When it fails the old snapshot and the log stay as they were, and the next one is due
+     * {@code snapshotEvery} inputs later.
+     */
+    public void snapshot(SnapshotWriter snapshotWriter) throws IOException {
+        if (wal == null || sinceSnapshot == 0) return;
+        long start = System.nanoTime();
+        Path tmp = dir.resolve(SNAPSHOT + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                // A writer may close the stream it is given, the channel has to stay open for the fsync
+                OutputStream out = new BufferedOutputStream(new KeepOpen(Channels.newOutputStream(channel)));
+                new DataOutputStream(out).writeLong(lastSeq);
+                snapshotWriter.write(out);
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(tmp, dir.resolve(SNAPSHOT), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            snapshotDueAt = sinceSnapshot + snapshotEvery;
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        wal.truncate(0);
+        wal.force(true);
+        sinceSnapshot = 0;
+        snapshotDueAt = snapshotEvery;
+        log.info("Snapshot of patient {} at seq {} in {} ms", patientId, lastSeq, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /** Moves an unreadable snapshot aside, so the next recovery starts from the log alone. */
+    public void discardSnapshot() throws IOException {
+        close();
+        Path snapshot = dir.resolve(SNAPSHOT);
+        if (Files.exists(snapshot))
+            Files.move(snapshot, dir.resolve(SNAPSHOT + ".unreadable"), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** Moves an unreadable log aside and starts an empty one. */
+    public void discardLog() throws IOException {
+        close();
+        Path walFile = dir.resolve(WAL);
+        if (Files.exists(walFile))
+            Files.move(walFile, dir.resolve(WAL + ".unreadable"), StandardCopyOption.REPLACE_EXISTING);
+        sinceSnapshot = 0;
+        snapshotDueAt = snapshotEvery;
+    }
+
+    public void close() {
+        if (wal == null) return;
+        try {
+            wal.close();
+        } catch (IOException e) {
+            log.warn("Could not close log of patient {}", patientId, e);
+        }
+        wal = null;
+    }
+
+    private FileChannel openWal() throws IOException {
+        Files.createDirectories(dir);
+        return FileChannel.open(dir.resolve(WAL), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /** Flushes on close instead of closing, the owner of the stream closes it. */
+    private static final class KeepOpen extends FilterOutputStream {
+        KeepOpen(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    public interface SnapshotWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    public interface SnapshotReader {
+        void read(InputStream in) throws IOException, ClassNotFoundException;
+    }
+
+    public interface TailReader {
+        void read(List<List<Object>> batches);
+    }
+}
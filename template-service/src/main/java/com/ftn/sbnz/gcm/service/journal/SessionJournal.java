@@ -0,0 +1,71 @@
+package com.ftn.sbnz.gcm.service.journal;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Where session snapshots and input logs live on disk, one directory per patient.
+ */
+@Component
+public class SessionJournal {
+
+    @Value("${rules.journal.enabled:true}")
+    private boolean enabled;
+
+    @Value("${rules.journal.dir:data/sessions}")
+    private String dir;
+
+    @Value("${rules.journal.snapshot-every:5000}")
+    private int snapshotEvery;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public PatientJournal open(String patientId) {
+        return new PatientJournal(patientId, directoryOf(patientId), snapshotEvery);
+    }
+
+    /** Patients with a journal directory, whether or not it holds anything yet. */
+    public List<String> patients() {
+        Path root = Paths.get(dir);
+        if (!Files.isDirectory(root)) return Collections.emptyList();
+        try (Stream<Path> dirs = Files.list(root)) {
+            return dirs.filter(Files::isDirectory)
+                    .map(d -> decode(d.getFileName().toString()))
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not list journals in " + root, e);
+        }
+    }
+
+    private static String decode(String name) {
+        try {
+            return URLDecoder.decode(name, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Path directoryOf(String patientId) {
+        try {
+            // Patient ids come from request parameters, keep them from escaping the journal directory
+            return Paths.get(dir).resolve(URLEncoder.encode(patientId, "UTF-8").replace(".", "%2E"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.ftn.sbnz.gcm.service.journal;
+
+import com.ftn.sbnz.gcm.model.models.GlucoseMeasurement;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Record layout of the write-ahead log:
+ * {@code [int length][int crc][long seq][byte type][payload]}, length and crc cover seq, type and payload.
+ * Readings are written as two primitives, everything else with Java serialization.
+ * The last record of every appended batch has {@link #END_OF_BATCH} set in its type.
+ */
+final class WalCodec {
+
+    static final int HEADER = 8;
+    static final byte GLUCOSE = 1;
+    static final byte OBJECT = 2;
+    static final byte END_OF_BATCH = (byte) 0x80;
+
+    private WalCodec() {}
+
+    static void write(DataOutputStream out, long seq, Object fact, boolean endOfBatch) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(32);
+        DataOutputStream data = new DataOutputStream(body);
+        data.writeLong(seq);
+        byte type = fact instanceof GlucoseMeasurement ? GLUCOSE : OBJECT;
+        data.writeByte(endOfBatch ? type | END_OF_BATCH : type);
+        if (type == GLUCOSE) {
+            GlucoseMeasurement gm = (GlucoseMeasurement) fact;
+            data.writeDouble(gm.getValue());
+            data.writeLong(gm.getTimestamp());
+        } else {
+            try (ObjectOutputStream oos = new ObjectOutputStream(data)) {
+                oos.writeObject(fact);
+            }
+        }
+        byte[] bytes = body.toByteArray();
+        out.writeInt(bytes.length);
+        out.writeInt(crc(bytes, 0, bytes.length));
+        out.write(bytes);
+    }
+
+    /**
+     * Reads the record at the buffer's position.
+     * @return null, with the position unchanged, if the rest of the buffer is not one whole valid record
+     */
+    static Record read(ByteBuffer buffer) throws IOException, ClassNotFoundException {
+        int start = buffer.position();
+        if (buffer.remaining() < HEADER) return null;
+        int length = buffer.getInt();
+        int crc = buffer.getInt();
+        if (length < 9 || length > buffer.remaining()) {
+            buffer.position(start);
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        if (crc(bytes, 0, length) != crc) {
+            buffer.position(start);
+            return null;
+        }
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(bytes));
+        long seq = data.readLong();
+        byte type = data.readByte();
+        Object fact;
+        if ((type & ~END_OF_BATCH) == GLUCOSE) {
+            double value = data.readDouble();
+            fact = new GlucoseMeasurement(value, data.readLong());
+        } else {
+            try (ObjectInputStream ois = new ObjectInputStream(data)) {
+                fact = ois.readObject();
+            }
+        }
+        return new Record(seq, fact, (type & END_OF_BATCH) != 0);
+    }
+
+    private static int crc(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    static final class Record {
+        final long seq;
+        final Object fact;
+        final boolean endOfBatch;
+
+        Record(long seq, Object fact, boolean endOfBatch) {
+            this.seq = seq;
+            this.fact = fact;
+            this.endOfBatch = endOfBatch;
+        }
+    }
+}
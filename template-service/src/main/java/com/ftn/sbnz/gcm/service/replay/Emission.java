@@ -0,0 +1,22 @@
+package com.ftn.sbnz.gcm.service.replay;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.ftn.sbnz.gcm.model.enums.TrendType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One line of a replay's output: something the rules sent on a channel, at session time {@code t}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class Emission {
+    private long t;
+    private String channel;
+    private TrendType direction;
+    private Integer strength;
+    private String text;
+}
@@ -0,0 +1,295 @@
+package com.ftn.sbnz.gcm.service.replay;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.ftn.sbnz.gcm.model.models.ActivityEvent;
+import com.ftn.sbnz.gcm.model.models.Food;
+import com.ftn.sbnz.gcm.model.models.FoodAmount;
+import com.ftn.sbnz.gcm.model.models.FoodEvent;
+import com.ftn.sbnz.gcm.model.models.GlucoseMeasurement;
+import com.ftn.sbnz.gcm.model.models.GlucoseTrendConfig;
+import com.ftn.sbnz.gcm.model.models.InsulinEvent;
+import com.ftn.sbnz.gcm.model.models.Suggestion;
+import com.ftn.sbnz.gcm.model.models.TimelineEvent;
+import com.ftn.sbnz.gcm.model.models.Trend;
+import com.ftn.sbnz.gcm.service.dto.ReplayDtos;
+import com.ftn.sbnz.gcm.service.dto.TimelineEventDtos;
+import com.ftn.sbnz.gcm.service.journal.InputLog;
+import com.ftn.sbnz.gcm.service.rules.KieBaseHolder;
+import com.ftn.sbnz.gcm.service.rules.RetentionPolicy;
+import com.ftn.sbnz.gcm.service.rules.TrendStabilizer;
+import com.ftn.sbnz.gcm.service.service.FoodCatalogCache;
+import com.ftn.sbnz.gcm.service.service.FoodCatalogIndex;
+import com.ftn.sbnz.gcm.service.service.RuleEngineSession;
+import com.ftn.sbnz.gcm.service.service.RuleEventPublisher;
+import com.ftn.sbnz.gcm.service.store.GlucoseStore;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
+
+import static org.springframework.http.HttpStatus.NOT_FOUND;
+
+/**
+ * Backtests the live rule set over recorded traces, as fast as the engine goes.
+ * <p>
+ * Every {@code <patient>.ndjson} file in {@code replay.dir/traces} is streamed record by record
+ * ({@link TraceRecord}) into a private {@link RuleEngineSession} whose pseudo clock follows event time,
+ * firing after every record like the live feed does. Whatever the rules send on the {@code trend} and
+ * {@code sugg} channels goes to {@code replay.dir/results/<patient>.ndjson} ({@link Emission}).
+ * Traces run in parallel on a fork-join pool, one task per trace.
+ * Readings kept in the {@link GlucoseStore} can be replayed the same way, straight from its segments.
+ * <p>
+ * Replay sessions share the live KieBase, so templates should not be reloaded while a replay runs.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ReplayEngine {
+
+    private static final String TRACES = "traces";
+    private static final String RESULTS = "results";
+
+    private final KieBaseHolder kieBaseHolder;
+    private final RetentionPolicy retentionPolicy;
+    private final FoodCatalogIndex foodCatalog;
+    private final FoodCatalogCache foodCatalogCache;
+    private final TrendStabilizer trendStabilizer;
+    private final GlucoseStore glucoseStore;
+    private final ObjectMapper objectMapper;
+
+    @Value("${replay.dir:data/replay}")
+    private String dir;
+
+    @Value("${replay.parallelism:0}")
+    private int parallelism;
+
+    private ForkJoinPool pool;
+
+    @PostConstruct
+    public void start() {
+        pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    @PreDestroy
+    public void stop() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Replays every trace matching the glob and waits for all of them.
+     * @param trendConfig thresholds to run the trend rules with, null for the defaults
+     */
+    public ReplayDtos.ReplayReportDto replay(String glob, GlucoseTrendConfig trendConfig) throws IOException {
+        Path traces = Paths.get(dir, TRACES);
+        if (!Files.isDirectory(traces))
+            throw new ResponseStatusException(NOT_FOUND, "No trace directory " + traces.toAbsolutePath() + ".");
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(traces, glob)) {
+            stream.forEach(files::add);
+        }
+        Path results = Files.createDirectories(Paths.get(dir, RESULTS));
+        Map<UUID, Food> foods = foodCatalogCache.get().getFoods();
+        GlucoseTrendConfig config = trendConfig != null ? trendConfig : new GlucoseTrendConfig();
+
+        long start = System.nanoTime();
+        List<ForkJoinTask<ReplayDtos.ReplayTraceDto>> tasks = files.stream()
+                .map(file -> pool.submit(() -> replayTrace(file, results, foods, config)))
+                .collect(Collectors.toList());
+        List<ReplayDtos.ReplayTraceDto> done = tasks.stream().map(ForkJoinTask::join).collect(Collectors.toList());
+        long nanos = System.nanoTime() - start;
+
+        long records = done.stream().mapToLong(r -> r.getReadings() + r.getEvents()).sum();
+        long emissions = done.stream().mapToLong(r -> r.getTrends() + r.getSuggestions()).sum();
+        log.info("Replayed {} traces, {} records in {} ms", done.size(), records, nanos / 1_000_000);
+        return new ReplayDtos.ReplayReportDto(done.size(), records, emissions, nanos / 1_000_000,
+                nanos == 0 ? 0 : records * 1_000_000_000L / nanos, done);
+    }
+
+    /**
+     * Replays the stored readings of one patient with {@code from <= t <= to}, glucose only,
+     * into {@code replay.dir/results/<patient>.stored.ndjson}.
+     */
+    public ReplayDtos.ReplayReportDto replayStored(String patientId, long from, long to,
+                                                   GlucoseTrendConfig trendConfig) throws IOException {
+        if (!glucoseStore.isEnabled() || glucoseStore.count(patientId) == 0)
+            throw new ResponseStatusException(NOT_FOUND, "No stored readings of patient " + patientId + ".");
+        Path output = Files.createDirectories(Paths.get(dir, RESULTS)).resolve(patientId + ".stored.ndjson");
+        GlucoseTrendConfig config = trendConfig != null ? trendConfig : new GlucoseTrendConfig();
+
+        ReplayDtos.ReplayTraceDto done = pool.submit(() -> run(patientId, output, config, (run, session) ->
+                glucoseStore.scan(patientId, from, to, (t, mmol) -> run.glucose(session, t, mmol)))).join();
+        long records = done.getReadings();
+        log.info("Replayed {} stored readings of patient {} in {} ms", records, patientId, done.getMillis());
+        return new ReplayDtos.ReplayReportDto(1, records, done.getTrends() + done.getSuggestions(), done.getMillis(),
+                done.getMillis() == 0 ? 0 : records * 1000 / done.getMillis(), List.of(done));
+    }
+
+    private ReplayDtos.ReplayTraceDto replayTrace(Path file, Path results, Map<UUID, Food> foods,
+                                                  GlucoseTrendConfig config) {
+        String name = file.getFileName().toString();
+        String patientId = name.contains(".") ? name.substring(0, name.lastIndexOf('.')) : name;
+        ObjectReader reader = objectMapper.readerFor(TraceRecord.class);
+        return run(patientId, results.resolve(patientId + ".ndjson"), config, (run, session) -> {
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 16);
+                 MappingIterator<TraceRecord> records = reader.readValues(in)) {
+                while (records.hasNext()) {
+                    run.apply(session, records.next(), foods);
+                }
+            }
+        });
+    }
+
+    private ReplayDtos.ReplayTraceDto run(String patientId, Path output, GlucoseTrendConfig config, Feed feed) {
+        ReplayDtos.ReplayTraceDto result = new ReplayDtos.ReplayTraceDto();
+        result.setPatientId(patientId);
+        result.setOutput(output.toString());
+
+        long start = System.nanoTime();
+        ObjectWriter writer = objectMapper.writerFor(Emission.class).withRootValueSeparator("\n");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(output), 1 << 16);
+             SequenceWriter emissions = writer.writeValues(out)) {
+            TraceRun run = new TraceRun(result, emissions);
+            RuleEngineSession session = new RuleEngineSession(patientId, kieBaseHolder, run::now, run,
+                    retentionPolicy, foodCatalog, InputLog.NONE);
+            try {
+                session.initSession();
+                session.configure(config);
+                session.stabilize(trendStabilizer.forSession());
+                feed.into(run, session);
+            } finally {
+                session.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Replay of patient {} stopped", patientId, e);
+            result.setError(e.getMessage());
+        }
+        result.setMillis((System.nanoTime() - start) / 1_000_000);
+        return result;
+    }
+
+    /** Pushes the records of one replay into its session. */
+    private interface Feed {
+        void into(TraceRun run, RuleEngineSession session) throws IOException;
+    }
+
+    /** Clock and channel sink of one trace, only used from the task replaying it. */
+    private static final class TraceRun implements RuleEventPublisher {
+        private final ReplayDtos.ReplayTraceDto result;
+        private final SequenceWriter emissions;
+        private long now = Long.MIN_VALUE;
+
+        TraceRun(ReplayDtos.ReplayTraceDto result, SequenceWriter emissions) {
+            this.result = result;
+            this.emissions = emissions;
+        }
+
+        long now() {
+            return now;
+        }
+
+        void apply(RuleEngineSession session, TraceRecord record, Map<UUID, Food> foods) {
+            if (record.getType() == TraceRecord.Type.GLUCOSE) {
+                glucose(session, record.getT(), record.getMmol());
+                return;
+            }
+            if (record.getType() == null || !advance(record.getT())) {
+                result.setSkipped(result.getSkipped() + 1);
+                return;
+            }
+            TimelineEvent event = toEvent(record, foods);
+            if (event == null) {
+                result.setSkipped(result.getSkipped() + 1);
+                return;
+            }
+            session.insertEvent(event);
+            result.setEvents(result.getEvents() + 1);
+        }
+
+        void glucose(RuleEngineSession session, long t, double mmol) {
+            if (!advance(t)) {
+                result.setSkipped(result.getSkipped() + 1);
+                return;
+            }
+            session.evaluateAndPublish(new GlucoseMeasurement(mmol, now), true);
+            result.setReadings(result.getReadings() + 1);
+        }
+
+        // The session clock cannot go back, records behind it would be judged at the wrong time
+        private boolean advance(long t) {
+            if (t < now) return false;
+            now = t;
+            if (result.getFirstT() == null) result.setFirstT(now);
+            result.setLastT(now);
+            return true;
+        }
+
+        private TimelineEvent toEvent(TraceRecord record, Map<UUID, Food> foods) {
+            switch (record.getType()) {
+                case INSULIN:
+                    return record.getAmount() == null ? null : new InsulinEvent(null, record.getT(), record.getAmount());
+                case ACTIVITY:
+                    return record.getDuration() == null || record.getIntensity() == null ? null
+                            : new ActivityEvent(null, record.getT(), record.getDuration(), record.getIntensity());
+                case FOOD:
+                    if (record.getFoods() == null) return null;
+                    List<FoodAmount> amounts = new ArrayList<>(record.getFoods().size());
+                    for (TimelineEventDtos.FoodAmountDto fad : record.getFoods()) {
+                        Food food = foods.get(fad.getId());
+                        if (food == null) return null;
+                        FoodAmount amount = new FoodAmount();
+                        amount.setFood(food);
+                        amount.setQuantity(fad.getQuantity());
+                        amounts.add(amount);
+                    }
+                    return new FoodEvent(null, record.getT(), amounts);
+                default:
+                    return null;
+            }
+        }
+
+        @Override
+        public void trend(String patientId, Trend trend) {
+            write(new Emission(now, "trend", trend.getDirection(), trend.getStrength(), null));
+            result.setTrends(result.getTrends() + 1);
+        }
+
+        @Override
+        public void suggestion(String patientId, Suggestion suggestion) {
+            write(new Emission(now, "sugg", null, null, suggestion.getText()));
+            result.setSuggestions(result.getSuggestions() + 1);
+        }
+
+        private void write(Emission emission) {
+            try {
+                emissions.write(emission);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
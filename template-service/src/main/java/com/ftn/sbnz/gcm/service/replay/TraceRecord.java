@@ -0,0 +1,44 @@
+package com.ftn.sbnz.gcm.service.replay;
+
+import com.fasterxml.jackson.annotation.JsonAlias;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.ftn.sbnz.gcm.model.enums.ActivityIntensity;
+import com.ftn.sbnz.gcm.service.dto.TimelineEventDtos;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One line of a recorded trace, in event-time order:
+ * <pre>
+ * {"type":"GLUCOSE","t":1700000000000,"mmol":6.4}
+ * {"type":"INSULIN","at":1700000300000,"amount":4}
+ * {"type":"ACTIVITY","at":1700000600000,"duration":30,"intensity":"MED"}
+ * {"type":"FOOD","at":1700000900000,"foods":[{"id":"...","quantity":120}]}
+ * </pre>
+ */
+@Data
+@NoArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class TraceRecord {
+
+    public enum Type { GLUCOSE, FOOD, INSULIN, ACTIVITY }
+
+    private Type type;
+    @JsonAlias("at")
+    private long t;
+
+    // GLUCOSE
+    private double mmol;
+
+    // INSULIN
+    private Integer amount;
+
+    // ACTIVITY
+    private Integer duration;
+    private ActivityIntensity intensity;
+
+    // FOOD
+    private List<TimelineEventDtos.FoodAmountDto> foods;
+}
@@ -1,25 +1,47 @@
 package com.ftn.sbnz.gcm.service.repository;
 
-import com.ftn.sbnz.gcm.model.models.ActivityEvent;
-import com.ftn.sbnz.gcm.model.models.FoodEvent;
-import com.ftn.sbnz.gcm.model.models.InsulinEvent;
 import com.ftn.sbnz.gcm.model.models.TimelineEvent;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
 @Repository
 public interface TimelineEventRepository extends JpaRepository<TimelineEvent, UUID> {
-    @Query("SELECT fe FROM FoodEvent fe WHERE fe.at BETWEEN :from AND :to")
-    List<FoodEvent> findFoodEventsInRange(@Param("from") Long from, @Param("to") Long to);
 
-    @Query("SELECT ie FROM InsulinEvent ie WHERE ie.at BETWEEN :from AND :to")
-    List<InsulinEvent> findInsulinEventsInRange(@Param("from") Long from, @Param("to") Long to);
+    /** One row of {@link #findPage}, the subclass columns of other event types are null. */
+    interface TimelineRow {
+        String getId();
+        Long getAt();
+        String getType();
+        Integer getAmount();
+        Integer getDuration();
+        String getIntensity();
+    }
 
-    @Query("SELECT ae FROM ActivityEvent ae WHERE ae.at BETWEEN :from AND :to")
-    List<ActivityEvent> findActivityEventsInRange(@Param("from") Long from, @Param("to") Long to);
+    /**
+     * Events with {@code from <= at <= to} that sort after {@code (afterAt, afterId)}, ordered by {@code (at, id)}.
+     * A single pass over the events_at_id index, with the subclass tables joined in, whatever the history length.
+     * Ids go through text because Hibernate has no native mapping for the Postgres uuid type.
+     */
+    @Query(value = "SELECT CAST(e.id AS varchar) AS id, e.at AS at," +
+            " CASE WHEN i.id IS NOT NULL THEN 'INSULIN' WHEN a.id IS NOT NULL THEN 'ACTIVITY' ELSE 'FOOD' END AS type," +
+            " i.amount AS amount, a.duration AS duration, a.intensity AS intensity" +
+            " FROM events e" +
+            " LEFT JOIN event_insulin i ON i.id = e.id" +
+            " LEFT JOIN event_activity a ON a.id = e.id" +
+            " WHERE e.at BETWEEN :from AND :to AND (e.at, e.id) > (:afterAt, CAST(:afterId AS uuid))" +
+            " ORDER BY e.at, e.id" +
+            " LIMIT :limit", nativeQuery = true)
+    List<TimelineRow> findPage(@Param("from") long from, @Param("to") long to,
+                               @Param("afterAt") long afterAt, @Param("afterId") String afterId,
+                               @Param("limit") int limit);
+
+    /** {@code [foodEventId, foodId, quantity]} of every amount of the given food events, in one query. */
+    @Query("SELECT fe.id, a.food.id, a.quantity FROM FoodEvent fe JOIN fe.amount a WHERE fe.id IN :ids")
+    List<Object[]> findFoodAmounts(@Param("ids") Collection<UUID> ids);
 }
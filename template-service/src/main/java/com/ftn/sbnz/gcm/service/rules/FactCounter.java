@@ -0,0 +1,33 @@
+package com.ftn.sbnz.gcm.service.rules;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Live fact count per type of one session.
+ * Recounted from working memory by the session's thread after every change: the engine expires events
+ * without any delete event, so counting inserts and deletes drifts up. Safe to read from any thread.
+ */
+public class FactCounter {
+    private volatile Map<Class<?>, Long> counts = Collections.emptyMap();
+
+    public void recount(Iterable<?> facts) {
+        Map<Class<?>, Long> fresh = new HashMap<>();
+        for (Object fact : facts) {
+            fresh.merge(fact.getClass(), 1L, Long::sum);
+        }
+        counts = fresh;
+    }
+
+    public long count(Class<?> type) {
+        return counts.getOrDefault(type, 0L);
+    }
+
+    public Map<String, Long> snapshot() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        counts.forEach((type, count) -> snapshot.put(type.getSimpleName(), count));
+        return snapshot;
+    }
+}
@@ -0,0 +1,142 @@
+package com.ftn.sbnz.gcm.service.rules;
+
+import com.ftn.sbnz.gcm.model.rules.RuleTemplateExpander;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.drools.core.impl.StatefulKnowledgeSessionImpl;
+import org.kie.api.KieBase;
+import org.kie.api.KieBaseConfiguration;
+import org.kie.api.KieServices;
+import org.kie.api.builder.Message;
+import org.kie.api.builder.Results;
+import org.kie.api.conf.EventProcessingOption;
+import org.kie.api.io.ResourceType;
+import org.kie.api.runtime.KieContainer;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.KieSessionConfiguration;
+import org.kie.api.runtime.conf.ClockTypeOption;
+import org.kie.internal.utils.KieHelper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads the rule base once and hands out sessions on top of it.
+ * Building the KieBase takes seconds, a new session on an existing KieBase takes milliseconds.
+ * <p>
+ * By default the KieBase comes pre-compiled (executable model) from gcm-kjar through the {@link KieContainer}.
+ * With {@code rules.source=templates} the templates are expanded and compiled at runtime instead.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class KieBaseHolder {
+
+    public static final String KBASE_NAME = "rules";
+
+    private final KieContainer kieContainer;
+
+    @Value("${rules.source:kjar}")
+    private String source;
+
+    private volatile KieBase kieBase;
+
+    @Getter private volatile long compileMillis = -1;
+    @Getter private volatile long lastSessionMicros = -1;
+    private final AtomicLong sessionsCreated = new AtomicLong();
+
+    /** Holder around an already built KieBase, for tools and tests running outside Spring. */
+    public static KieBaseHolder of(KieBase kieBase) {
+        KieBaseHolder holder = new KieBaseHolder(null);
+        holder.kieBase = kieBase;
+        return holder;
+    }
+
+    public KieBase getKieBase() {
+        KieBase kb = kieBase;
+        if (kb == null) {
+            synchronized (this) {
+                kb = kieBase;
+                if (kb == null) {
+                    kb = load();
+                    kieBase = kb;
+                }
+            }
+        }
+        return kb;
+    }
+
+    public KieSession newSession() {
+        KieBase kb = getKieBase();
+        long start = System.nanoTime();
+
+        KieSession session = kb.newKieSession(sessionConfiguration(), null);
+
+        lastSessionMicros = (System.nanoTime() - start) / 1_000;
+        sessionsCreated.incrementAndGet();
+        log.info("Created KieSession in {} us", lastSessionMicros);
+        return session;
+    }
+
+    /**
+     * Clears working memory and agenda of an existing session so it can be reused.
+     * Falls back to a fresh session if the implementation does not support resetting.
+     */
+    public KieSession resetSession(KieSession session) {
+        if (!(session instanceof StatefulKnowledgeSessionImpl)) {
+            session.dispose();
+            return newSession();
+        }
+        long start = System.nanoTime();
+        ((StatefulKnowledgeSessionImpl) session).reset();
+        lastSessionMicros = (System.nanoTime() - start) / 1_000;
+        log.info("Reset KieSession in {} us", lastSessionMicros);
+        return session;
+    }
+
+    public long getSessionsCreated() {
+        return sessionsCreated.get();
+    }
+
+    private static KieSessionConfiguration sessionConfiguration() {
+        KieSessionConfiguration kSessionCfg = KieServices.Factory.get().newKieSessionConfiguration();
+        kSessionCfg.setOption(ClockTypeOption.get("pseudo"));
+        return kSessionCfg;
+    }
+
+    private KieBase load() {
+        long start = System.nanoTime();
+        KieBase kb = "templates".equals(source) ? compileTemplates() : loadFromContainer();
+        compileMillis = (System.nanoTime() - start) / 1_000_000;
+        log.info("Loaded KieBase from {} in {} ms", source, compileMillis);
+        return kb;
+    }
+
+    private KieBase loadFromContainer() {
+        Results results = kieContainer.verify(KBASE_NAME);
+        if (results.hasMessages(Message.Level.ERROR)) {
+            results.getMessages(Message.Level.ERROR).forEach(m -> log.error(m.getText()));
+            throw new IllegalStateException("KieBase " + KBASE_NAME + " has errors. Check the logs.");
+        }
+        return kieContainer.getKieBase(KBASE_NAME);
+    }
+
+    /**
+     * Compiles the same rules the kjar build produces, straight from the templates on the classpath.
+     */
+    public static KieBase compileTemplates() {
+        RuleTemplateExpander expander = RuleTemplateExpander.fromClasspath();
+        KieHelper kieHelper = new KieHelper();
+
+        expander.expandAll().values().forEach(drl -> kieHelper.addContent(drl, ResourceType.DRL));
+        // Add base rules
+        kieHelper.addContent(expander.baseRules(), ResourceType.DRL);
+
+        KieBaseConfiguration kBaseConfig = KieServices.Factory.get().newKieBaseConfiguration();
+        kBaseConfig.setOption(EventProcessingOption.STREAM);
+
+        return kieHelper.build(kBaseConfig);
+    }
+}
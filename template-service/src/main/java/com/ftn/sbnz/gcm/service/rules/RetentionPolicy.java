@@ -0,0 +1,64 @@
+package com.ftn.sbnz.gcm.service.rules;
+
+import com.ftn.sbnz.gcm.model.models.ActivityEvent;
+import com.ftn.sbnz.gcm.model.models.FoodEvent;
+import com.ftn.sbnz.gcm.model.models.GlucoseMeasurement;
+import com.ftn.sbnz.gcm.model.models.InsulinEvent;
+import com.ftn.sbnz.gcm.model.models.TimelineEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * How long facts of each type stay in a session, measured on the session clock from the fact's own timestamp.
+ * Configured values are raised to what the rules in gcm-kjar need to look back,
+ * so retention can never hide facts from a temporal rule:
+ * readings feed window:time(16m), insulin is checked 30 minutes back from the latest reading.
+ */
+@Component
+public class RetentionPolicy {
+
+    static final Duration MIN_GLUCOSE = Duration.ofMinutes(16);
+    static final Duration MIN_INSULIN = Duration.ofMinutes(30);
+    static final Duration MIN_ACTIVITY = Duration.ofMinutes(30);
+
+    private final Map<Class<?>, Long> retentionMillis = new LinkedHashMap<>();
+
+    public RetentionPolicy(@Value("${rules.retention.glucose:6h}") Duration glucose,
+                           @Value("${rules.retention.insulin:24h}") Duration insulin,
+                           @Value("${rules.retention.activity:24h}") Duration activity,
+                           @Value("${rules.retention.food:24h}") Duration food) {
+        retentionMillis.put(GlucoseMeasurement.class, max(glucose, MIN_GLUCOSE));
+        retentionMillis.put(InsulinEvent.class, max(insulin, MIN_INSULIN));
+        retentionMillis.put(ActivityEvent.class, max(activity, MIN_ACTIVITY));
+        retentionMillis.put(FoodEvent.class, food.toMillis());
+    }
+
+    /** Types the policy applies to, in a stable order. */
+    public Iterable<Class<?>> types() {
+        return retentionMillis.keySet();
+    }
+
+    /** @return retention in ms, or -1 if facts of this type are kept until the rules retract them */
+    public long retentionMillis(Class<?> type) {
+        return retentionMillis.getOrDefault(type, -1L);
+    }
+
+    public static long timestampOf(Object fact) {
+        if (fact instanceof GlucoseMeasurement) return ((GlucoseMeasurement) fact).getTimestamp();
+        if (fact instanceof ActivityEvent) {
+            ActivityEvent ae = (ActivityEvent) fact;
+            // Counted from the end of the activity
+            return ae.getAt() + Duration.ofMinutes(ae.getDuration() == null ? 0 : ae.getDuration()).toMillis();
+        }
+        if (fact instanceof TimelineEvent) return ((TimelineEvent) fact).getAt();
+        return Long.MAX_VALUE;
+    }
+
+    private static long max(Duration configured, Duration minimum) {
+        return Math.max(configured.toMillis(), minimum.toMillis());
+    }
+}
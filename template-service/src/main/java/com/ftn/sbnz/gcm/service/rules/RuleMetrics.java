@@ -0,0 +1,140 @@
+package com.ftn.sbnz.gcm.service.rules;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.kie.api.definition.rule.Rule;
+import org.kie.api.event.rule.AfterMatchFiredEvent;
+import org.kie.api.event.rule.BeforeMatchFiredEvent;
+import org.kie.api.event.rule.DefaultAgendaEventListener;
+import org.kie.api.event.rule.MatchCancelledEvent;
+import org.kie.api.event.rule.MatchCreatedEvent;
+import org.kie.api.event.rule.ObjectDeletedEvent;
+import org.kie.api.event.rule.ObjectInsertedEvent;
+import org.kie.api.event.rule.ObjectUpdatedEvent;
+import org.kie.api.event.rule.RuleRuntimeEventListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-rule and per-fact-type meters of all rule sessions, published through Micrometer:
+ * <ul>
+ *     <li>{@code rules.matches}, {@code rules.cancelled} - matches created and cancelled, per rule</li>
+ *     <li>{@code rules.consequence} - consequence time and fire count, per rule</li>
+ *     <li>{@code rules.fire.all} and {@code rules.fire.all.fired} - duration and fired rules of each fireAllRules</li>
+ *     <li>{@code rules.facts.inserted}, {@code rules.facts.deleted} - per fact type</li>
+ *     <li>{@code rules.trend} - emitted trends by outcome: published, or why they were suppressed</li>
+ * </ul>
+ * Each session gets its own listener with its own meter cache, so events never contend across shards.
+ * With {@code rules.metrics.enabled=false} no listener is attached at all.
+ */
+@Component
+@RequiredArgsConstructor
+public class RuleMetrics {
+
+    private final MeterRegistry registry;
+
+    @Value("${rules.metrics.enabled:true}")
+    private boolean enabled;
+
+    /** @return listener for one session, or null when metrics are off */
+    public SessionMetrics forSession() {
+        return enabled ? new SessionMetrics() : null;
+    }
+
+    public class SessionMetrics extends DefaultAgendaEventListener implements RuleRuntimeEventListener {
+        private final Timer fireAll = Timer.builder("rules.fire.all")
+                .description("Duration of fireAllRules")
+                .publishPercentileHistogram()
+                .register(registry);
+        private final DistributionSummary fireAllFired = DistributionSummary.builder("rules.fire.all.fired")
+                .description("Rules fired per fireAllRules")
+                .register(registry);
+
+        // Rule objects change on reload, stale entries only point at meters that stop moving
+        private final Map<Rule, RuleMeters> rules = new IdentityHashMap<>();
+        private final Map<Class<?>, Counter> inserted = new HashMap<>();
+        private final Map<Class<?>, Counter> deleted = new HashMap<>();
+        private final Map<TrendStabilizer.Verdict, Counter> trends = new EnumMap<>(TrendStabilizer.Verdict.class);
+        private long consequenceStart;
+
+        public void fireAllRules(long nanos, int fired) {
+            fireAll.record(nanos, TimeUnit.NANOSECONDS);
+            fireAllFired.record(fired);
+        }
+
+        public void trend(TrendStabilizer.Verdict verdict) {
+            trends.computeIfAbsent(verdict, v -> Counter.builder("rules.trend")
+                    .description("Trends emitted by the rules, by what became of them")
+                    .tag("outcome", v == TrendStabilizer.Verdict.PUBLISH ? "published" : v.name().toLowerCase())
+                    .register(registry)).increment();
+        }
+
+        @Override
+        public void matchCreated(MatchCreatedEvent event) {
+            meters(event.getMatch().getRule()).matches.increment();
+        }
+
+        @Override
+        public void matchCancelled(MatchCancelledEvent event) {
+            meters(event.getMatch().getRule()).cancelled.increment();
+        }
+
+        @Override
+        public void beforeMatchFired(BeforeMatchFiredEvent event) {
+            consequenceStart = System.nanoTime();
+        }
+
+        @Override
+        public void afterMatchFired(AfterMatchFiredEvent event) {
+            meters(event.getMatch().getRule()).consequence.record(System.nanoTime() - consequenceStart, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void objectInserted(ObjectInsertedEvent event) {
+            factCounter(inserted, "rules.facts.inserted", event.getObject().getClass()).increment();
+        }
+
+        @Override
+        public void objectUpdated(ObjectUpdatedEvent event) {}
+
+        @Override
+        public void objectDeleted(ObjectDeletedEvent event) {
+            factCounter(deleted, "rules.facts.deleted", event.getOldObject().getClass()).increment();
+        }
+
+        private RuleMeters meters(Rule rule) {
+            return rules.computeIfAbsent(rule, r -> new RuleMeters(r));
+        }
+
+        private Counter factCounter(Map<Class<?>, Counter> cache, String name, Class<?> type) {
+            return cache.computeIfAbsent(type, t -> Counter.builder(name).tag("type", t.getSimpleName()).register(registry));
+        }
+    }
+
+    private class RuleMeters {
+        final Counter matches;
+        final Counter cancelled;
+        final Timer consequence;
+
+        RuleMeters(Rule rule) {
+            String name = rule.getName();
+            String pkg = rule.getPackageName();
+            matches = Counter.builder("rules.matches").tag("rule", name).tag("package", pkg).register(registry);
+            cancelled = Counter.builder("rules.cancelled").tag("rule", name).tag("package", pkg).register(registry);
+            consequence = Timer.builder("rules.consequence")
+                    .description("Consequence time, its count is the number of fires")
+                    .tag("rule", name).tag("package", pkg)
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+    }
+}
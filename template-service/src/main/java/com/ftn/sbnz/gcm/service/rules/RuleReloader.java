@@ -0,0 +1,161 @@
+package com.ftn.sbnz.gcm.service.rules;
+
+import com.ftn.sbnz.gcm.model.rules.RuleTemplate;
+import com.ftn.sbnz.gcm.model.rules.RuleTemplateExpander;
+import com.ftn.sbnz.gcm.service.dto.RuleReloadDto;
+import com.ftn.sbnz.gcm.service.service.RuleEngineSessionManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.drools.core.impl.InternalKnowledgeBase;
+import org.kie.api.definition.KiePackage;
+import org.kie.api.definition.rule.Rule;
+import org.kie.api.io.ResourceType;
+import org.kie.internal.builder.KnowledgeBuilder;
+import org.kie.internal.builder.KnowledgeBuilderFactory;
+import org.kie.internal.io.ResourceFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+
+/**
+ * Recompiles one rule template and swaps its package in the live KieBase.
+ * Every template has a package of its own, so the swap leaves the other rules alone,
+ * and sessions keep their working memory: facts are matched against the new rules on the next fire.
+ * <p>
+ * That next fire re-evaluates the swapped rules against every fact already in the session: what the old rules
+ * inserted logically is retracted with them and inserted again by the new ones, so their consequences run again.
+ * A re-emitted trend equals the one last published and is dropped by the {@link TrendStabilizer} gate;
+ * suggestions are not gated, so reloading a suggestion template sends the current suggestions once more.
+ * <p>
+ * Templates and tables are read from {@code rules.reload.dir} when set, otherwise from the classpath.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RuleReloader {
+
+    private static final Pattern RULE_START = Pattern.compile("(?m)^\\s*rule\\s+\"((?:[^\"\\\\]|\\\\.)*)\"");
+
+    private final KieBaseHolder kieBaseHolder;
+    private final RuleEngineSessionManager sessionManager;
+
+    // Hash of every rule's expanded text, per template, as it is live now
+    private final Map<RuleTemplate, Map<String, String>> liveRules = new EnumMap<>(RuleTemplate.class);
+
+    @Value("${rules.reload.dir:}")
+    private String reloadDir;
+
+    public String getReloadDir() {
+        return reloadDir;
+    }
+
+    /**
+     * @param table replacement table of the template, or null to use the one from the rule sources
+     */
+    public synchronized RuleReloadDto reload(RuleTemplate template, byte[] table) {
+        long start = System.nanoTime();
+        RuleTemplateExpander sources = reloadDir.isEmpty()
+                ? RuleTemplateExpander.fromClasspath()
+                : RuleTemplateExpander.fromDirectory(Paths.get(reloadDir));
+        if (table != null) sources = sources.withData(template, table);
+
+        KnowledgeBuilder builder = KnowledgeBuilderFactory.newKnowledgeBuilder();
+        String drl;
+        try {
+            drl = sources.expand(template);
+            builder.add(ResourceFactory.newByteArrayResource(drl.getBytes(StandardCharsets.UTF_8)), ResourceType.DRL);
+        } catch (RuntimeException e) {
+            throw new ResponseStatusException(BAD_REQUEST, "Template " + template + " could not be expanded: " + e.getMessage(), e);
+        }
+        if (builder.hasErrors()) {
+            throw new ResponseStatusException(BAD_REQUEST, "Template " + template + " does not compile: " + builder.getErrors());
+        }
+        Collection<KiePackage> packages = builder.getKnowledgePackages();
+        KiePackage pkg = packages.stream()
+                .filter(p -> !p.getRules().isEmpty())
+                .findFirst()
+                .orElseThrow(() -> new ResponseStatusException(BAD_REQUEST, "Template " + template + " has no rules."));
+        long compileMillis = (System.nanoTime() - start) / 1_000_000;
+
+        InternalKnowledgeBase kBase = (InternalKnowledgeBase) kieBaseHolder.getKieBase();
+        Set<String> before = ruleNames(kBase.getKiePackage(pkg.getName()));
+        Set<String> after = ruleNames(pkg);
+        // Until the first reload the live rules are the ones the kjar was built from, the classpath sources
+        Map<String, String> oldRules = liveRules.computeIfAbsent(template,
+                t -> ruleHashes(RuleTemplateExpander.fromClasspath().expand(t)));
+        Map<String, String> newRules = ruleHashes(drl);
+        List<String> updated = new ArrayList<>();
+        List<String> kept = new ArrayList<>();
+        for (String name : intersection(after, before)) {
+            if (newRules.get(name) != null && newRules.get(name).equals(oldRules.get(name))) kept.add(name);
+            else updated.add(name);
+        }
+
+        long swapStart = System.nanoTime();
+        sessionManager.runExclusive(() -> {
+            if (kBase.getKiePackage(pkg.getName()) != null) kBase.removeKiePackage(pkg.getName());
+            kBase.addPackages(packages);
+        });
+        long swapMillis = (System.nanoTime() - swapStart) / 1_000_000;
+        liveRules.put(template, newRules);
+
+        RuleReloadDto report = new RuleReloadDto(template.name(), pkg.getName(),
+                difference(after, before), difference(before, after), updated, kept,
+                compileMillis, swapMillis);
+        log.info("Reloaded {}: {} added, {} removed, {} updated, {} kept, compiled in {} ms, swapped in {} ms",
+                template, report.getAdded().size(), report.getRemoved().size(), updated.size(), kept.size(),
+                compileMillis, swapMillis);
+        return report;
+    }
+
+    private static Set<String> ruleNames(KiePackage pkg) {
+        Set<String> names = new TreeSet<>();
+        if (pkg != null) {
+            for (Rule rule : pkg.getRules()) names.add(rule.getName());
+        }
+        return names;
+    }
+
+    /** Rule name to a hash of its text, from the rule header up to the next rule or the end of the DRL. */
+    static Map<String, String> ruleHashes(String drl) {
+        Map<String, String> hashes = new LinkedHashMap<>();
+        Matcher m = RULE_START.matcher(drl);
+        if (!m.find()) return hashes;
+        while (true) {
+            String name = m.group(1).replace("\\\"", "\"");
+            int start = m.start();
+            boolean more = m.find();
+            String text = drl.substring(start, more ? m.start() : drl.length()).trim();
+            hashes.put(name, DigestUtils.md5DigestAsHex(text.getBytes(StandardCharsets.UTF_8)));
+            if (!more) return hashes;
+        }
+    }
+
+    private static List<String> difference(Set<String> a, Set<String> b) {
+        List<String> result = new ArrayList<>(a);
+        result.removeAll(b);
+        return result;
+    }
+
+    private static List<String> intersection(Set<String> a, Set<String> b) {
+        List<String> result = new ArrayList<>(a);
+        result.retainAll(b);
+        return result;
+    }
+}
@@ -0,0 +1,82 @@
+package com.ftn.sbnz.gcm.service.rules;
+
+import com.ftn.sbnz.gcm.model.rules.RuleTemplate;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches {@code rules.reload.dir} and reloads a template when its .drt or table changes.
+ * Events are collected for a short while first, editors often write a file more than once.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RuleTableWatcher {
+
+    private static final long SETTLE_MILLIS = 300;
+
+    private final RuleReloader reloader;
+    private WatchService watchService;
+    private Thread thread;
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (reloader.getReloadDir().isEmpty()) return;
+        Path dir = Paths.get(reloader.getReloadDir());
+        watchService = FileSystems.getDefault().newWatchService();
+        dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        thread = new Thread(this::run, "rules-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        log.info("Watching {} for rule table changes", dir.toAbsolutePath());
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        if (watchService == null) return;
+        thread.interrupt();
+        watchService.close();
+    }
+
+    private void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Set<RuleTemplate> changed = EnumSet.noneOf(RuleTemplate.class);
+                WatchKey key = watchService.take();
+                do {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        RuleTemplate template = RuleTemplate.forFile(String.valueOf(event.context()));
+                        if (template != null) changed.add(template);
+                    }
+                    key.reset();
+                } while ((key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null);
+
+                for (RuleTemplate template : changed) {
+                    try {
+                        reloader.reload(template, null);
+                    } catch (RuntimeException e) {
+                        log.error("Could not reload {}, the previous rules stay active", template, e);
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Shutting down
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.ftn.sbnz.gcm.service.rules;
+
+import com.ftn.sbnz.gcm.model.enums.TrendType;
+import com.ftn.sbnz.gcm.model.models.GlucoseTrendConfig;
+import com.ftn.sbnz.gcm.model.models.Trend;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Decides which trends the rules emit are worth publishing.
+ * The trend rules re-emit on every reading, so without this clients get the same arrow again and again,
+ * and an arrow flaps whenever the weighted delta hovers around a {@link GlucoseTrendConfig} threshold.
+ * <p>
+ * A trend is published only when it differs from the last published one, that one was held for at least
+ * {@code rules.trend.min-dwell} of session time, and its delta clears the threshold it crossed
+ * by {@code rules.trend.hysteresis} mmol/L. Everything else is suppressed.
+ * <p>
+ * Only what leaves the session is debounced. The rules still re-insert {@code TrendSignal} and {@code Trend}
+ * whenever the window changes, and rules matching on {@code Trend} see every raw classification.
+ */
+@Component
+public class TrendStabilizer {
+
+    public enum Verdict { PUBLISH, DUPLICATE, DWELL, HYSTERESIS }
+
+    private final double hysteresis;
+    private final long minDwellMillis;
+
+    public TrendStabilizer(@Value("${rules.trend.hysteresis:0.1}") double hysteresis,
+                           @Value("${rules.trend.min-dwell:5m}") Duration minDwell) {
+        this.hysteresis = hysteresis;
+        this.minDwellMillis = minDwell.toMillis();
+    }
+
+    /** State of one session, reset whenever the session is. */
+    public Gate forSession() {
+        return new Gate();
+    }
+
+    public final class Gate {
+        private Trend published;
+        private long since;
+
+        public Verdict check(Trend trend, GlucoseTrendConfig config, long now) {
+            if (published != null) {
+                if (published.getDirection() == trend.getDirection() && published.getStrength() == trend.getStrength())
+                    return Verdict.DUPLICATE;
+                if (now - since < minDwellMillis)
+                    return Verdict.DWELL;
+                if (!clearsBand(trend, config))
+                    return Verdict.HYSTERESIS;
+            }
+            published = trend;
+            since = now;
+            return Verdict.PUBLISH;
+        }
+
+        public void reset() {
+            published = null;
+        }
+
+        // The delta has to stay in the new level even when moved back towards the published one by the band
+        private boolean clearsBand(Trend trend, GlucoseTrendConfig config) {
+            if (trend.getDirection() == TrendType.UNKNOWN || published.getDirection() == TrendType.UNKNOWN) return true;
+            int from = level(published);
+            int to = level(trend);
+            return to > from
+                    ? level(trend.getDelta() - hysteresis, config) >= to
+                    : level(trend.getDelta() + hysteresis, config) <= to;
+        }
+    }
+
+    // -2 fast down .. 2 fast up, same cut points as the trend-classify table
+    private static int level(double delta, GlucoseTrendConfig config) {
+        if (delta > config.strongUpThreshold) return 2;
+        if (delta > config.slightUpThreshold) return 1;
+        if (delta >= config.slightDownThreshold) return 0;
+        if (delta >= config.strongDownThreshold) return -1;
+        return -2;
+    }
+
+    private static int level(Trend trend) {
+        switch (trend.getDirection()) {
+            case UP: return trend.getStrength();
+            case DOWN: return -trend.getStrength();
+            default: return 0;
+        }
+    }
+}
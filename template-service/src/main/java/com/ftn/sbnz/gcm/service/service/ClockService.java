@@ -3,6 +3,8 @@ package com.ftn.sbnz.gcm.service.service;
 import lombok.Getter;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 @Service
 public class ClockService {
     public enum Mode { REALTIME, SIM }
@@ -10,8 +12,23 @@ public class ClockService {
     private final Mode mode = Mode.SIM;
     @Getter private final long t0Real = System.currentTimeMillis();
     private final long t0Sim  = t0Real;
+    // Added on top of the simulated time, so the clock never runs behind a session restored from a journal
+    private final AtomicLong offset = new AtomicLong();
 
     public long now() {
+        return simNow() + offset.get();
+    }
+
+    public long getOffset() {
+        return offset.get();
+    }
+
+    /** Moves the clock forward, if needed, so it reads at least {@code time} from now on. */
+    public void catchUp(long time) {
+        offset.accumulateAndGet(time - simNow(), Math::max);
+    }
+
+    protected long simNow() {
         if (mode == Mode.REALTIME) return System.currentTimeMillis();
         double speed = 10.0;
         return t0Sim + Math.round((System.currentTimeMillis() - t0Real) * speed);
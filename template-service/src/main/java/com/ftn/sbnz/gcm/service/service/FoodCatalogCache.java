@@ -0,0 +1,145 @@
+package com.ftn.sbnz.gcm.service.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ftn.sbnz.gcm.model.models.Food;
+import com.ftn.sbnz.gcm.service.dto.FoodDtos;
+import com.ftn.sbnz.gcm.service.repository.FoodRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * The food catalog as an immutable, versioned snapshot: foods by id plus the serialized
+ * {@code GET /api/food} body and its ETag, so neither the list nor meal creation goes to the database.
+ * <p>
+ * Writes go through {@link #put}, which only queues the food and marks the snapshot stale; the next read
+ * builds the next version with everything queued, so a burst of writes costs one rebuild, not one each.
+ * {@link #invalidate} drops the snapshot for changes made behind the service's back; the next read reloads it.
+ * Hits and misses are counted in {@code food.catalog.cache}, the ratio in {@code food.catalog.cache.hit.ratio}.
+ */
+@Service
+@RequiredArgsConstructor
+public class FoodCatalogCache {
+
+    private final FoodRepository repo;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    private volatile Snapshot snapshot;
+    private long version;
+    // Saved since the snapshot was built, guarded by this
+    private final Map<UUID, Food> pending = new LinkedHashMap<>();
+    private volatile boolean stale;
+
+    private Counter hits;
+    private Counter misses;
+
+    @PostConstruct
+    public void registerMeters() {
+        hits = Counter.builder("food.catalog.cache").tag("result", "hit").register(meterRegistry);
+        misses = Counter.builder("food.catalog.cache").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("food.catalog.cache.hit.ratio", this, c -> {
+                    double total = c.hits.count() + c.misses.count();
+                    return total == 0 ? 0 : c.hits.count() / total;
+                })
+                .description("Catalog reads served without going to the database")
+                .register(meterRegistry);
+    }
+
+    public Snapshot get() {
+        Snapshot current = snapshot;
+        if (current != null && !stale) {
+            hits.increment();
+            return current;
+        }
+        misses.increment();
+        return load();
+    }
+
+    /** The foods with the given ids that exist, by id. */
+    public Map<UUID, Food> find(Collection<UUID> ids) {
+        Map<UUID, Food> foods = get().foods;
+        Map<UUID, Food> found = new LinkedHashMap<>();
+        for (UUID id : ids) {
+            Food food = foods.get(id);
+            if (food != null) found.put(id, food);
+        }
+        return found;
+    }
+
+    /** Write-through of a saved food, the next read moves the catalog to the next version without a reload. */
+    public synchronized void put(Food food) {
+        // Nothing built yet, the next read loads the food from the database anyway
+        if (snapshot == null) return;
+        pending.put(food.getId(), food);
+        stale = true;
+    }
+
+    public synchronized void invalidate() {
+        snapshot = null;
+        pending.clear();
+        stale = false;
+    }
+
+    private synchronized Snapshot load() {
+        if (snapshot == null) {
+            snapshot = build(repo.findAll());
+        } else if (stale) {
+            Map<UUID, Food> foods = new LinkedHashMap<>(snapshot.foods);
+            foods.putAll(pending);
+            snapshot = build(foods.values());
+        }
+        pending.clear();
+        stale = false;
+        return snapshot;
+    }
+
+    private Snapshot build(Collection<Food> foods) {
+        List<FoodDtos.FoodDto> dtos = foods.stream().map(FoodDtos.FoodDto::new).collect(Collectors.toList());
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(dtos);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize the food catalog", e);
+        }
+        Map<UUID, Food> byId = new LinkedHashMap<>();
+        for (Food food : foods) byId.put(food.getId(), food);
+        // From the content, not the version, so it still matches after a restart
+        String etag = "\"" + DigestUtils.md5DigestAsHex(body) + "\"";
+        return new Snapshot(++version, Collections.unmodifiableMap(byId), body, etag);
+    }
+
+    @Getter
+    public static final class Snapshot {
+        private final long version;
+        private final Map<UUID, Food> foods;
+        private final byte[] body;
+        private final String etag;
+
+        Snapshot(long version, Map<UUID, Food> foods, byte[] body, String etag) {
+            this.version = version;
+            this.foods = foods;
+            this.body = body;
+            this.etag = etag;
+        }
+
+        public List<Food> list() {
+            return new ArrayList<>(foods.values());
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.ftn.sbnz.gcm.service.service;
+
+import com.ftn.sbnz.gcm.model.enums.GlycemicIndexType;
+import com.ftn.sbnz.gcm.model.models.Food;
+import com.ftn.sbnz.gcm.model.models.FoodCatalog;
+import com.ftn.sbnz.gcm.model.models.FoodConstraint;
+import com.ftn.sbnz.gcm.service.repository.FoodRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * In-memory range index over (carbs, fats, glycemicIndex) of the food catalog, queried by the suggestion rules.
+ * Foods are bucketed per glycemic index point, each bucket is sorted by carbs
+ * and keeps a min-fats tree, so a lookup is a few binary searches per GI point instead of a catalog scan.
+ * Buckets are immutable and swapped on change, lookups from the rule shards never lock.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FoodCatalogIndex implements FoodCatalog {
+
+    // One bucket per GI point, the last one also holds everything above it
+    static final int GI_BUCKETS = 128;
+
+    private final FoodRepository repo;
+    private final AtomicReferenceArray<Bucket> buckets = new AtomicReferenceArray<>(GI_BUCKETS);
+
+    @PostConstruct
+    public void load() {
+        long start = System.nanoTime();
+        rebuild(repo.findAll());
+        log.info("Indexed {} foods in {} ms", size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /** Replaces the whole index. */
+    public synchronized void rebuild(Collection<Food> foods) {
+        List<List<Food>> grouped = new ArrayList<>(GI_BUCKETS);
+        for (int b = 0; b < GI_BUCKETS; b++) grouped.add(new ArrayList<>());
+        for (Food food : foods) {
+            if (indexable(food)) grouped.get(bucketOf(food.getGlycemicIndex())).add(food);
+        }
+        for (int b = 0; b < GI_BUCKETS; b++) {
+            List<Food> group = grouped.get(b);
+            buckets.set(b, group.isEmpty() ? null : new Bucket(group.toArray(new Food[0])));
+        }
+    }
+
+    /** Adds one food, only its GI bucket is rebuilt. */
+    public synchronized void add(Food food) {
+        if (!indexable(food)) return;
+        int b = bucketOf(food.getGlycemicIndex());
+        Bucket bucket = buckets.get(b);
+        buckets.set(b, bucket == null ? new Bucket(new Food[]{food}) : bucket.with(food));
+    }
+
+    public int size() {
+        int size = 0;
+        for (int b = 0; b < GI_BUCKETS; b++) {
+            Bucket bucket = buckets.get(b);
+            if (bucket != null) size += bucket.foods.length;
+        }
+        return size;
+    }
+
+    @Override
+    public List<Food> find(FoodConstraint constraint, int limit) {
+        GlycemicIndexType giType = constraint.getGlycemicIndexType();
+        int minGi = giType == null ? 0 : giType.getMinGi();
+        int maxGi = giType == null ? Integer.MAX_VALUE : giType.getMaxGi();
+        List<Food> found = new ArrayList<>(Math.min(limit, 16));
+        for (int b = bucketOf(minGi); b <= bucketOf(maxGi) && found.size() < limit; b++) {
+            Bucket bucket = buckets.get(b);
+            if (bucket != null)
+                bucket.collect(constraint.getMinCarbs(), constraint.getMaxCarbs(), constraint.getMaxFats(),
+                        minGi, maxGi, limit, found);
+        }
+        return found;
+    }
+
+    // Foods with a missing value never matched the Food(...) patterns either
+    private static boolean indexable(Food food) {
+        return food.getCarbs() != null && food.getFats() != null && food.getGlycemicIndex() != null;
+    }
+
+    private static int bucketOf(int gi) {
+        return Math.max(0, Math.min(gi, GI_BUCKETS - 1));
+    }
+
+    private static final class Bucket {
+        private static final Comparator<Food> BY_CARBS = Comparator.comparingDouble(Food::getCarbs);
+
+        final Food[] foods;
+        final double[] carbs;
+        final int[] gi;
+        // Min fats per node, leaves start at 'leaves' and are padded with +infinity
+        final double[] minFats;
+        final int leaves;
+
+        Bucket(Food[] foods) {
+            Arrays.sort(foods, BY_CARBS);
+            this.foods = foods;
+            int n = foods.length;
+            carbs = new double[n];
+            gi = new int[n];
+            leaves = Integer.highestOneBit(Math.max(1, n - 1)) << 1;
+            minFats = new double[2 * leaves];
+            Arrays.fill(minFats, Double.POSITIVE_INFINITY);
+            for (int i = 0; i < n; i++) {
+                carbs[i] = foods[i].getCarbs();
+                gi[i] = foods[i].getGlycemicIndex();
+                minFats[leaves + i] = foods[i].getFats();
+            }
+            for (int node = leaves - 1; node > 0; node--) {
+                minFats[node] = Math.min(minFats[2 * node], minFats[2 * node + 1]);
+            }
+        }
+
+        Bucket with(Food food) {
+            Food[] grown = Arrays.copyOf(foods, foods.length + 1);
+            grown[foods.length] = food;
+            return new Bucket(grown);
+        }
+
+        void collect(double minCarbs, double maxCarbs, double maxFats, int minGi, int maxGi, int limit, List<Food> out) {
+            int from = firstAtLeast(minCarbs);
+            int to = firstAbove(maxCarbs) - 1;
+            if (from <= to)
+                collect(1, 0, leaves - 1, from, to, maxFats, minGi, maxGi, limit, out);
+        }
+
+        // Walks only subtrees that hold a food in [from, to] with low enough fats
+        private void collect(int node, int nodeFrom, int nodeTo, int from, int to,
+                             double maxFats, int minGi, int maxGi, int limit, List<Food> out) {
+            if (out.size() >= limit || nodeTo < from || nodeFrom > to || minFats[node] > maxFats) return;
+            if (nodeFrom == nodeTo) {
+                if (gi[nodeFrom] >= minGi && gi[nodeFrom] <= maxGi) out.add(foods[nodeFrom]);
+                return;
+            }
+            int mid = (nodeFrom + nodeTo) >>> 1;
+            collect(2 * node, nodeFrom, mid, from, to, maxFats, minGi, maxGi, limit, out);
+            collect(2 * node + 1, mid + 1, nodeTo, from, to, maxFats, minGi, maxGi, limit, out);
+        }
+
+        private int firstAtLeast(double value) {
+            int lo = 0, hi = carbs.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (carbs[mid] < value) lo = mid + 1; else hi = mid;
+            }
+            return lo;
+        }
+
+        private int firstAbove(double value) {
+            int lo = 0, hi = carbs.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (carbs[mid] <= value) lo = mid + 1; else hi = mid;
+            }
+            return lo;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package com.ftn.sbnz.gcm.service.service;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ftn.sbnz.gcm.service.dto.FoodDtos;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.HttpStatus.NOT_FOUND;
+
+/**
+ * Loads nutrition database dumps from {@code food.import.dir} into the catalog.
+ * <p>
+ * One thread parses the file row by row into batches and hands them over a queue a few batches deep,
+ * so memory stays bounded whatever the file size; {@code food.import.writers} threads upsert the batches
+ * through multi-row JDBC inserts. Ids are derived from the row's id or code column, or from its name,
+ * so importing a newer dump of the same database updates foods instead of duplicating them.
+ * The rule index and the catalog cache are rebuilt once the import is done.
+ * <p>
+ * CSV needs a header; JSON may be an array of objects or one object per line. Columns are matched loosely:
+ * {@code name|description}, {@code carbs|carbohydrate(s)}, {@code fats|fat|totalfat},
+ * {@code glycemicindex|gi}, {@code id|code|fdcid}. Rows without a name, carbs, fats and GI are rejected.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FoodImportService {
+
+    private static final String UPSERT = "INSERT INTO food (id, name, carbs, fats, glycemic_index) VALUES (?, ?, ?, ?, ?)" +
+            " ON CONFLICT (id) DO UPDATE SET name = EXCLUDED.name, carbs = EXCLUDED.carbs," +
+            " fats = EXCLUDED.fats, glycemic_index = EXCLUDED.glycemic_index";
+    private static final List<Object[]> END = new ArrayList<>();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final FoodCatalogIndex catalogIndex;
+    private final FoodCatalogCache catalogCache;
+
+    @Value("${food.import.dir:data/food}")
+    private String dir;
+
+    @Value("${food.import.batch-size:5000}")
+    private int batchSize;
+
+    @Value("${food.import.writers:4}")
+    private int writers;
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final AtomicInteger jobIds = new AtomicInteger();
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void start() {
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "food-import");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /** Starts importing a file of the import directory and returns right away, see {@link #status}. */
+    public FoodDtos.FoodImportDto start(String fileName) {
+        Path base = Paths.get(dir).toAbsolutePath().normalize();
+        Path file = base.resolve(fileName).normalize();
+        if (!file.startsWith(base) || !Files.isRegularFile(file))
+            throw new ResponseStatusException(NOT_FOUND, "No dump " + fileName + " in " + base + ".");
+        String name = file.getFileName().toString().toLowerCase();
+        if (!name.endsWith(".csv") && !name.endsWith(".json") && !name.endsWith(".ndjson"))
+            throw new ResponseStatusException(BAD_REQUEST, "Expected a .csv, .json or .ndjson dump.");
+
+        Job job = new Job(String.valueOf(jobIds.incrementAndGet()), fileName);
+        jobs.put(job.id, job);
+        executor.execute(() -> run(job, file));
+        return job.toDto();
+    }
+
+    public FoodDtos.FoodImportDto status(String id) {
+        Job job = jobs.get(id);
+        if (job == null) throw new ResponseStatusException(NOT_FOUND, "No food import " + id + ".");
+        return job.toDto();
+    }
+
+    public List<FoodDtos.FoodImportDto> list() {
+        return jobs.values().stream().map(Job::toDto).collect(Collectors.toList());
+    }
+
+    private void run(Job job, Path file) {
+        BlockingQueue<List<Object[]>> queue = new ArrayBlockingQueue<>(writers * 2);
+        List<Future<?>> writing = new ArrayList<>(writers);
+        for (int i = 0; i < writers; i++) {
+            writing.add(executor.submit(() -> write(job, queue)));
+        }
+        try {
+            List<Object[]> batch = new ArrayList<>(batchSize);
+            parse(file, row -> {
+                if (job.error != null) throw new IllegalStateException("Stopped after a failed write");
+                job.read.incrementAndGet();
+                Object[] food = toFood(row);
+                if (food == null) {
+                    job.rejected.incrementAndGet();
+                    return;
+                }
+                batch.add(food);
+                if (batch.size() == batchSize) {
+                    put(queue, new ArrayList<>(batch));
+                    batch.clear();
+                }
+            });
+            if (!batch.isEmpty()) put(queue, batch);
+        } catch (IOException | RuntimeException e) {
+            job.fail(e);
+        } finally {
+            for (int i = 0; i < writers; i++) put(queue, END);
+        }
+        for (Future<?> writer : writing) {
+            try {
+                writer.get();
+            } catch (Exception e) {
+                job.fail(e);
+            }
+        }
+
+        // Whatever made it in is in the database, so the catalog follows even after a failure
+        catalogIndex.load();
+        catalogCache.invalidate();
+        job.finish();
+        log.info("Food import {} of {}: {} rows read, {} written, {} rejected in {} ms ({} rows/s){}",
+                job.id, job.file, job.read, job.written, job.rejected, job.millis(), job.rowsPerSecond(),
+                job.error == null ? "" : ", failed: " + job.error);
+    }
+
+    // Keeps taking after a failure, so the parser never blocks on a full queue
+    private void write(Job job, BlockingQueue<List<Object[]>> queue) {
+        while (true) {
+            List<Object[]> batch;
+            try {
+                batch = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (batch == END) return;
+            if (job.error != null) continue;
+            try {
+                List<Object[]> rows = distinctIds(batch);
+                jdbcTemplate.batchUpdate(UPSERT, rows);
+                job.written.addAndGet(rows.size());
+            } catch (RuntimeException e) {
+                job.fail(e);
+            }
+        }
+    }
+
+    // One multi-row upsert cannot touch the same row twice, the last row of an id wins
+    private static List<Object[]> distinctIds(List<Object[]> batch) {
+        Map<Object, Object[]> byId = new LinkedHashMap<>(batch.size() * 2);
+        for (Object[] row : batch) byId.put(row[0], row);
+        return byId.size() == batch.size() ? batch : new ArrayList<>(byId.values());
+    }
+
+    private static void put(BlockingQueue<List<Object[]>> queue, List<Object[]> batch) {
+        try {
+            queue.put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing a batch", e);
+        }
+    }
+
+    private void parse(Path file, Consumer<Map<String, Object>> rows) throws IOException {
+        if (file.getFileName().toString().toLowerCase().endsWith(".csv")) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String header = reader.readLine();
+                if (header == null) return;
+                List<String> columns = splitCsv(header).stream().map(FoodImportService::key).collect(Collectors.toList());
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isEmpty()) continue;
+                    List<String> values = splitCsv(line);
+                    Map<String, Object> row = new HashMap<>();
+                    for (int i = 0; i < columns.size() && i < values.size(); i++) row.put(columns.get(i), values.get(i));
+                    rows.accept(row);
+                }
+            }
+            return;
+        }
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 16);
+             MappingIterator<Map<String, Object>> values = objectMapper.readerFor(Map.class).readValues(in)) {
+            while (values.hasNext()) {
+                Map<String, Object> row = new HashMap<>();
+                values.next().forEach((k, v) -> row.put(key(k), v));
+                rows.accept(row);
+            }
+        }
+    }
+
+    /** {@code [id, name, carbs, fats, glycemicIndex]}, or null if the row lacks one of them. */
+    private static Object[] toFood(Map<String, Object> row) {
+        String name = text(row, "name", "description");
+        Double carbs = number(row, "carbs", "carbohydrate", "carbohydrates");
+        Double fats = number(row, "fats", "fat", "totalfat");
+        Double gi = number(row, "glycemicindex", "gi");
+        if (name == null || carbs == null || fats == null || gi == null) return null;
+        String externalId = text(row, "id", "code", "fdcid");
+        return new Object[]{idOf(externalId, name), name, carbs, fats, (int) Math.round(gi)};
+    }
+
+    private static UUID idOf(String externalId, String name) {
+        if (externalId != null) {
+            try {
+                return UUID.fromString(externalId);
+            } catch (IllegalArgumentException e) {
+                return UUID.nameUUIDFromBytes(("food:" + externalId).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return UUID.nameUUIDFromBytes(("food-name:" + name.toLowerCase()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String text(Map<String, Object> row, String... keys) {
+        for (String key : keys) {
+            Object value = row.get(key);
+            if (value != null && !value.toString().trim().isEmpty()) return value.toString().trim();
+        }
+        return null;
+    }
+
+    private static Double number(Map<String, Object> row, String... keys) {
+        String value = text(row, keys);
+        if (value == null) return null;
+        try {
+            double number = Double.parseDouble(value);
+            return Double.isFinite(number) && number >= 0 ? number : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // "Glycemic_Index", "glycemic index" and "glycemicIndex" are the same column
+    private static String key(String column) {
+        return column.toLowerCase().replaceAll("[^a-z0-9]", "");
+    }
+
+    /** Splits one CSV line, honouring double quotes and doubled quotes inside them. */
+    static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') field.append(c);
+                else if (i + 1 < line.length() && line.charAt(i + 1) == '"') field.append(line.charAt(++i));
+                else quoted = false;
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static final class Job {
+        final String id;
+        final String file;
+        final long start = System.nanoTime();
+        final AtomicLong read = new AtomicLong();
+        final AtomicLong written = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        volatile String error;
+        volatile long end;
+
+        Job(String id, String file) {
+            this.id = id;
+            this.file = file;
+        }
+
+        synchronized void fail(Throwable e) {
+            if (error == null) error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        }
+
+        void finish() {
+            end = System.nanoTime();
+        }
+
+        long millis() {
+            return ((end != 0 ? end : System.nanoTime()) - start) / 1_000_000;
+        }
+
+        long rowsPerSecond() {
+            long millis = millis();
+            return millis == 0 ? 0 : read.get() * 1000 / millis;
+        }
+
+        FoodDtos.FoodImportDto toDto() {
+            String state = end == 0 ? "RUNNING" : error == null ? "DONE" : "FAILED";
+            return new FoodDtos.FoodImportDto(id, file, state, read.get(), written.get(), rejected.get(),
+                    millis(), rowsPerSecond(), error);
+        }
+    }
+}
@@ -7,20 +7,19 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
-import java.util.stream.Collectors;
 
 @Service @RequiredArgsConstructor
 public class FoodService {
     private final FoodRepository repo;
+    private final FoodCatalogIndex catalogIndex;
+    private final FoodCatalogCache catalogCache;
 
     public List<Food> list() { return repo.findAll(); }
 
     public Food create(FoodDtos.FoodCreateDto dto) {
-        Food f = dto.toFood();
-        return repo.save(f);
-    }
-
-    public List<FoodDtos.FoodDto> getAllFoods() {
-        return repo.findAll().stream().map(FoodDtos.FoodDto::new).collect(Collectors.toList());
+        Food f = repo.save(dto.toFood());
+        catalogIndex.add(f);
+        catalogCache.put(f);
+        return f;
     }
 }
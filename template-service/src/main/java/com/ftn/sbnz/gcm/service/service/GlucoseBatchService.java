@@ -0,0 +1,63 @@
+package com.ftn.sbnz.gcm.service.service;
+
+import com.ftn.sbnz.gcm.model.models.GlucoseMeasurement;
+import com.ftn.sbnz.gcm.service.dto.GlucoseBatchStatsDto;
+import com.ftn.sbnz.gcm.service.ingest.IngestionPipeline;
+import com.ftn.sbnz.gcm.service.ws.GlucoseMessage;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Backfills readings an uploader collected while offline: everything is inserted in event-time order
+ * and the rules fire once for the whole batch.
+ * The readings are stored and broadcast like live ones, through {@link IngestionPipeline#publish}.
+ */
+@Service
+@RequiredArgsConstructor
+public class GlucoseBatchService {
+
+    private final RuleEngineSessionManager sessionManager;
+    private final IngestionPipeline ingestionPipeline;
+
+    public GlucoseBatchStatsDto ingest(String patientId, Iterator<GlucoseMessage> messages) {
+        long start = System.nanoTime();
+
+        List<GlucoseMeasurement> readings = new ArrayList<>();
+        boolean sorted = true;
+        long previousT = Long.MIN_VALUE;
+        while (messages.hasNext()) {
+            GlucoseMessage msg = messages.next();
+            sorted &= msg.getT() >= previousT;
+            previousT = msg.getT();
+            readings.add(new GlucoseMeasurement(msg.getMmol(), msg.getT()));
+        }
+        if (!sorted) {
+            readings.sort(Comparator.comparingLong(GlucoseMeasurement::getTimestamp));
+        }
+        long parsed = System.nanoTime();
+
+        int fired = readings.isEmpty() ? 0
+                : sessionManager.submit(patientId, engine -> engine.insertMeasurements(readings)).join();
+        long done = System.nanoTime();
+
+        // Sorted here, so a backfill only leaves unsorted segments where it overlaps what was already stored
+        for (GlucoseMeasurement gm : readings) {
+            ingestionPipeline.publish(patientId, gm);
+        }
+
+        long engineNanos = done - parsed;
+        return new GlucoseBatchStatsDto(
+                readings.size(),
+                readings.isEmpty() ? null : readings.get(0).getTimestamp(),
+                readings.isEmpty() ? null : readings.get(readings.size() - 1).getTimestamp(),
+                fired,
+                (parsed - start) / 1_000_000,
+                engineNanos / 1_000_000,
+                engineNanos == 0 ? 0 : readings.size() * 1_000_000_000L / engineNanos);
+    }
+}
@@ -0,0 +1,134 @@
+package com.ftn.sbnz.gcm.service.service;
+
+import com.ftn.sbnz.gcm.service.ws.GlucoseMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recent glucose readings per patient, kept in primitive ring buffers, so a new dashboard gets its chart
+ * without asking the agent. The JSON sent to new clients is built once and reused until the next reading.
+ */
+@Service
+public class GlucoseHistory {
+
+    @Value("${glucose.history.capacity:2048}")
+    private int capacity;
+
+    @Value("${glucose.history.minutes:120}")
+    private long minutes;
+
+    private final Map<String, Ring> rings = new ConcurrentHashMap<>();
+
+    public void record(String patientId, long t, double mmol) {
+        rings.computeIfAbsent(patientId, id -> new Ring(capacity)).add(t, mmol);
+    }
+
+    public void recordAll(String patientId, List<GlucoseMessage> messages) {
+        Ring ring = rings.computeIfAbsent(patientId, id -> new Ring(capacity));
+        for (GlucoseMessage msg : messages) {
+            ring.add(msg.getT(), msg.getMmol());
+        }
+    }
+
+    public boolean isEmpty(String patientId) {
+        Ring ring = rings.get(patientId);
+        return ring == null || ring.isEmpty();
+    }
+
+    /**
+     * Readings of the last {@code glucose.history.minutes} before the newest one, oldest first,
+     * as a JSON array of GlucoseMessage.
+     */
+    public String toJson(String patientId) {
+        Ring ring = rings.get(patientId);
+        return ring == null ? "[]" : ring.toJson(TimeUnit.MINUTES.toMillis(minutes));
+    }
+
+    /**
+     * Same window as {@link #toJson}, limited to readings up to {@code upTo}, as two columns.
+     */
+    public Readings window(String patientId, long upTo) {
+        Ring ring = rings.get(patientId);
+        return ring == null ? new Readings(new long[0], new double[0]) : ring.window(TimeUnit.MINUTES.toMillis(minutes), upTo);
+    }
+
+    public static final class Readings {
+        public final long[] t;
+        public final double[] mmol;
+
+        Readings(long[] t, double[] mmol) {
+            this.t = t;
+            this.mmol = mmol;
+        }
+
+        public int size() {
+            return t.length;
+        }
+    }
+
+    private static final class Ring {
+        private final long[] t;
+        private final double[] mmol;
+        private int next;
+        private int size;
+        private String json;
+
+        Ring(int capacity) {
+            t = new long[capacity];
+            mmol = new double[capacity];
+        }
+
+        synchronized void add(long time, double value) {
+            t[next] = time;
+            mmol[next] = value;
+            next = (next + 1) % t.length;
+            if (size < t.length) size++;
+            json = null;
+        }
+
+        synchronized boolean isEmpty() {
+            return size == 0;
+        }
+
+        synchronized Readings window(long windowMillis, long upTo) {
+            int oldest = (next - size + t.length) % t.length;
+            long from = size == 0 ? 0 : t[(next - 1 + t.length) % t.length] - windowMillis;
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                long time = t[(oldest + i) % t.length];
+                if (time >= from && time <= upTo) count++;
+            }
+            long[] times = new long[count];
+            double[] values = new double[count];
+            for (int i = 0, j = 0; i < size; i++) {
+                int slot = (oldest + i) % t.length;
+                if (t[slot] < from || t[slot] > upTo) continue;
+                times[j] = t[slot];
+                values[j++] = mmol[slot];
+            }
+            return new Readings(times, values);
+        }
+
+        synchronized String toJson(long windowMillis) {
+            if (json != null) return json;
+            int oldest = (next - size + t.length) % t.length;
+            long from = size == 0 ? 0 : t[(next - 1 + t.length) % t.length] - windowMillis;
+            StringBuilder sb = new StringBuilder(size * 32 + 2).append('[');
+            boolean first = true;
+            for (int i = 0; i < size; i++) {
+                int slot = (oldest + i) % t.length;
+                if (t[slot] < from) continue;
+                if (!first) sb.append(',');
+                sb.append("{\"t\":").append(t[slot]).append(",\"mmol\":").append(mmol[slot]).append('}');
+                first = false;
+            }
+            json = sb.append(']').toString();
+            return json;
+        }
+    }
+}
@@ -1,227 +1,386 @@
 package com.ftn.sbnz.gcm.service.service;
 
-import com.ftn.sbnz.gcm.model.enums.ActivityIntensity;
-import com.ftn.sbnz.gcm.model.enums.GlycemicIndexType;
-import com.ftn.sbnz.gcm.model.enums.TrendType;
 import com.ftn.sbnz.gcm.model.models.*;
-import com.ftn.sbnz.gcm.service.ws.SuggestionHandler;
-import com.ftn.sbnz.gcm.service.ws.TrendHandler;
-import com.google.common.base.Supplier;
-import lombok.RequiredArgsConstructor;
-import lombok.SneakyThrows;
-import org.drools.template.ObjectDataCompiler;
-import org.kie.api.KieBase;
-import org.kie.api.KieBaseConfiguration;
-import org.kie.api.KieServices;
-import org.kie.api.conf.EventProcessingOption;
-import org.kie.api.io.Resource;
-import org.kie.api.io.ResourceType;
+import com.ftn.sbnz.gcm.service.journal.InputLog;
+import com.ftn.sbnz.gcm.service.rules.FactCounter;
+import com.ftn.sbnz.gcm.service.rules.KieBaseHolder;
+import com.ftn.sbnz.gcm.service.rules.RetentionPolicy;
+import com.ftn.sbnz.gcm.service.rules.RuleMetrics;
+import com.ftn.sbnz.gcm.service.rules.TrendStabilizer;
+import lombok.Getter;
+import org.kie.api.event.rule.AgendaEventListener;
+import org.kie.api.event.rule.RuleRuntimeEventListener;
 import org.kie.api.runtime.KieSession;
-import org.kie.api.runtime.KieSessionConfiguration;
-import org.kie.api.runtime.conf.ClockTypeOption;
+import org.kie.api.runtime.rule.FactHandle;
 import org.kie.api.time.SessionPseudoClock;
-import org.kie.internal.io.ResourceFactory;
-import org.kie.internal.utils.KieHelper;
-import org.springframework.stereotype.Service;
 
-import javax.annotation.PostConstruct;
-import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
-
-@Service
-@RequiredArgsConstructor
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.LongSupplier;
+
+/**
+ * Rule engine state of one patient.
+ * Not thread safe, {@link RuleEngineSessionManager} only calls it from the shard the patient is pinned to.
+ */
 public class RuleEngineSession {
 
-    private final TrendHandler trendHandler;
-    private final SuggestionHandler suggestionHandler;
-    private final ClockService clockService;
+    @Getter private final String patientId;
+    private final KieBaseHolder kieBaseHolder;
+    private final LongSupplier clock;
+    private final RuleEventPublisher publisher;
+    private final RetentionPolicy retention;
+    private final FoodCatalog foodCatalog;
+    private final InputLog inputLog;
     private KieSession kieSession;
+    private final FactCounter factCounter = new FactCounter();
+    // Null when rule metrics are off
+    private RuleMetrics.SessionMetrics metrics;
+    private GlucoseTrendConfig trendConfig = new GlucoseTrendConfig();
+    // Null publishes every trend the rules emit
+    private TrendStabilizer.Gate trendGate;
+
+    // Handles of facts under the retention policy, oldest first per type
+    private final Map<Class<?>, PriorityQueue<Retained>> retained = new HashMap<>();
+    private long retainedCount;
+
+    // What the rules sent on the channels during the current fireAllRules, published once it returns
+    private final List<Object> emitted = new ArrayList<>();
+
+    // Single LatestGlucose fact, updated in place on every newer reading
+    private LatestGlucose latest;
+    private FactHandle latestHandle;
+
+    @Getter private volatile long lastActivity = System.currentTimeMillis();
+
+    // Nothing inserted or restored since the last init
+    @Getter private boolean cold = true;
+    // Rules re-fired while replaying the input log already published once
+    private boolean replaying;
+
+    public RuleEngineSession(String patientId, KieBaseHolder kieBaseHolder, LongSupplier clock,
+                             RuleEventPublisher publisher, RetentionPolicy retention, FoodCatalog foodCatalog,
+                             InputLog inputLog) {
+        this.patientId = patientId;
+        this.kieBaseHolder = kieBaseHolder;
+        this.clock = clock;
+        this.publisher = publisher;
+        this.retention = retention;
+        this.foodCatalog = foodCatalog;
+        this.inputLog = inputLog;
+    }
 
-    @PostConstruct
     public void initSession() {
-        if (kieSession != null) {
-            kieSession.dispose();
-        }
-
-        KieHelper kieHelper = new KieHelper();
+        // The KieBase is compiled once by the holder, here we only need a clean session
+        kieSession = kieSession == null
+                ? kieBaseHolder.newSession()
+                : kieBaseHolder.resetSession(kieSession);
+        cold = true;
+        attach();
+    }
 
-        // Compile food recommendation template rules
-        String foodDrl = loadTemplate("/rules/template.drl", this::loadFoodData);
-        kieHelper.addContent(foodDrl, ResourceType.DRL);
+    /**
+     * Replaces the session with one written by {@link #writeSnapshot}.
+     * The input facts are inserted again one by one and the rules derive the rest, nothing is published.
+     */
+    public void restore(InputStream snapshot) throws IOException, ClassNotFoundException {
+        ObjectInputStream in = new ObjectInputStream(snapshot);
+        long sessionTime = in.readLong();
+        List<?> inputs = (List<?>) in.readObject();
+        initSession();
+        List<List<Object>> batches = new ArrayList<>(inputs.size());
+        for (Object fact : inputs) {
+            batches.add(Collections.singletonList(fact));
+        }
+        replay(batches, sessionTime);
+    }
 
-        // Compile trend classification template rules
-        String trendClassifyDrl = loadTemplate("/rules/trend-classify.drt", this::loadTrendClassifyData);
-        kieHelper.addContent(trendClassifyDrl, ResourceType.DRL);
+    /**
+     * Writes the session clock and the input facts still in working memory, in the order they were inserted.
+     * Not the marshalled KieSession: Drools 7.49 cannot read back the logical facts the accumulate rules insert.
+     */
+    public void writeSnapshot(OutputStream out) throws IOException {
+        List<Retained> live = new ArrayList<>();
+        for (PriorityQueue<Retained> queue : retained.values()) {
+            for (Retained r : queue) {
+                if (kieSession.getObject(r.handle) != null) live.add(r);
+            }
+        }
+        live.sort(Retained.INSERT_ORDER);
+        ArrayList<Object> inputs = new ArrayList<>(live.size());
+        for (Retained r : live) {
+            inputs.add(kieSession.getObject(r.handle));
+        }
+        ObjectOutputStream data = new ObjectOutputStream(out);
+        data.writeLong(getSessionTime());
+        data.writeObject(inputs);
+        data.flush();
+    }
 
-        // Compile "suggest if no food" fallback rules
-        String suggestNoFoodDrl = loadTemplate("/rules/suggest-no-food.drt", this::loadSuggestNoFoodData);
-        kieHelper.addContent(suggestNoFoodDrl, ResourceType.DRL);
+    /**
+     * Re-applies logged input batch by batch, with the clock following the readings.
+     * Nothing is published and nothing is logged again.
+     */
+    public void replay(List<List<Object>> batches) {
+        replay(batches, clock.getAsLong());
+    }
 
-        // Compile suggest-food rules
-        String suggestFoodDrl = loadTemplate("/rules/suggest-food.drt", this::loadSuggestFoodData);
-        kieHelper.addContent(suggestFoodDrl, ResourceType.DRL);
+    private void replay(List<List<Object>> batches, long until) {
+        replaying = true;
+        try {
+            for (List<Object> batch : batches) {
+                for (Object fact : batch) {
+                    if (fact instanceof GlucoseMeasurement)
+                        advanceTo(((GlucoseMeasurement) fact).getTimestamp());
+                    insertFact(fact);
+                }
+                fire();
+            }
+            advanceTo(until);
+            fire();
+            enforceRetention();
+        } finally {
+            replaying = false;
+        }
+        cold = false;
+        touch();
+    }
 
-        // Add base rules
-        InputStream basicRules = RuleEngineSession.class.getResourceAsStream("/rules/basic.drl");
-        Resource basicResource = ResourceFactory.newInputStreamResource(basicRules);
-        kieHelper.addResource(basicResource, ResourceType.DRL);
+    /** Attaches rule metrics, now and to every session this one is reset or restored to. */
+    public void instrument(RuleMetrics.SessionMetrics metrics) {
+        if (this.metrics != null && kieSession != null) {
+            kieSession.removeEventListener((AgendaEventListener) this.metrics);
+            kieSession.removeEventListener((RuleRuntimeEventListener) this.metrics);
+        }
+        this.metrics = metrics;
+        if (metrics != null && kieSession != null) {
+            kieSession.addEventListener((AgendaEventListener) metrics);
+            kieSession.addEventListener((RuleRuntimeEventListener) metrics);
+        }
+    }
 
-        KieBaseConfiguration kBaseConfig = KieServices.Factory.get().newKieBaseConfiguration();
-        kBaseConfig.setOption(EventProcessingOption.STREAM);
+    /** Trend thresholds the rules read from the {@code config} global, kept across resets and restores. */
+    public void configure(GlucoseTrendConfig trendConfig) {
+        this.trendConfig = trendConfig;
+        if (kieSession != null) kieSession.setGlobal("config", trendConfig);
+    }
 
-        KieBase kBase = kieHelper.build(kBaseConfig);
+    /** Filters the emitted trends down to real changes before they are published. */
+    public void stabilize(TrendStabilizer.Gate trendGate) {
+        this.trendGate = trendGate;
+    }
 
-        KieSessionConfiguration kSessionCfg = KieServices.Factory.get().newKieSessionConfiguration();
-        kSessionCfg.setOption(ClockTypeOption.get("pseudo"));
+    private void attach() {
+        latest = null;
+        latestHandle = null;
+        retained.clear();
 
-        kieSession = kBase.newKieSession(kSessionCfg, null);
+        factCounter.recount(Collections.emptyList());
+        instrument(metrics);
 
-        kieSession.registerChannel("trend", obj -> {
-            Trend t = (Trend) obj;
-            System.out.println(t);
-            trendHandler.send(new TrendMessage(t.toArrow()));
-        });
-        kieSession.registerChannel("sugg", obj -> {
-            Suggestion s = (Suggestion) obj;
-            suggestionHandler.send(new SuggestionMessage(clockService.now(), s.getText()));
-        });
+        emitted.clear();
+        if (trendGate != null) trendGate.reset();
+        kieSession.registerChannel("trend", emitted::add);
+        kieSession.registerChannel("sugg", emitted::add);
 
         kieSession.setGlobal("trend", kieSession.getChannels().get("trend"));
         kieSession.setGlobal("sugg",  kieSession.getChannels().get("sugg"));
 
-        kieSession.setGlobal("config", new GlucoseTrendConfig());
+        kieSession.setGlobal("config", trendConfig);
         kieSession.setGlobal("droolsClock", kieSession.getSessionClock());
+        kieSession.setGlobal("foodCatalog", foodCatalog);
+        touch();
     }
 
     public void evaluateAndPublish(GlucoseMeasurement gm, boolean shouldFire) {
         updateTime();
+        inputLog.append(Collections.singletonList(gm));
 
-        kieSession.insert(gm);
+        insertFact(gm);
 
-        if (shouldFire)
-            kieSession.fireAllRules();
+        if (shouldFire) {
+            fire();
+            enforceRetention();
+        }
+        touch();
     }
 
-    public void insertEvent(TimelineEvent event) {
+    /**
+     * Inserts a whole batch and fires once, so rules see the batch as a single change.
+     */
+    public void insertAll(List<?> facts) {
         updateTime();
-        kieSession.insert(event);
-        kieSession.fireAllRules();
+        inputLog.append(facts);
+        for (Object fact : facts) {
+            insertFact(fact);
+        }
+        fire();
+        enforceRetention();
+        touch();
     }
 
-    private void updateTime() {
-        SessionPseudoClock clock = kieSession.getSessionClock();
-        long past = clockService.now() - clock.getCurrentTime();
-        clock.advanceTime(past, java.util.concurrent.TimeUnit.MILLISECONDS);
+    /**
+     * Inserts readings sorted by timestamp and fires once at the end.
+     * The session clock is moved to each reading before it goes in, so the rules fire on the window
+     * at the newest reading, as they would have had it arrived live. The clock never passes the {@link ClockService}
+     * and never goes back: readings older than the session clock only reach the windows still open.
+     * The next insert moves the clock on to the {@link ClockService}.
+     * @return number of rules fired
+     */
+    public int insertMeasurements(List<GlucoseMeasurement> readings) {
+        long now = clock.getAsLong();
+        inputLog.append(readings);
+        for (GlucoseMeasurement gm : readings) {
+            advanceTo(Math.min(gm.getTimestamp(), now));
+            insertFact(gm);
+        }
+        int fired = fire();
+        enforceRetention();
+        touch();
+        return fired;
     }
 
+    public void insertEvent(TimelineEvent event) {
+        updateTime();
+        inputLog.append(Collections.singletonList(event));
+        insertFact(event);
+        fire();
+        enforceRetention();
+        touch();
+    }
 
-    @SneakyThrows
-    private List<FoodRuleTemplate> loadFoodData() {
-        InputStream csv = RuleEngineSession.class.getResourceAsStream("/rules/template-data.csv");
-        assert csv != null;
+    /** Time of the session clock, where it was left by the last insert, restore or replay. */
+    public long getSessionTime() {
+        return kieSession.getSessionClock().getCurrentTime();
+    }
 
-        List<FoodRuleTemplate> templates = new java.util.ArrayList<>();
-        BufferedReader reader = new BufferedReader(new InputStreamReader(csv));
+    /** Number of facts of the given type in working memory, as of the last fire. */
+    public long factCount(Class<?> type) {
+        return factCounter.count(type);
+    }
 
-        String line;
-        reader.readLine(); // Skip header
+    public Map<String, Long> factCounts() {
+        return factCounter.snapshot();
+    }
 
-        while ((line = reader.readLine()) != null) {
-            String[] parts = line.split(",");
-            // Adjust constructor arguments as needed
-            templates.add(new FoodRuleTemplate(
-                Integer.parseInt(parts[0]),
-                Double.parseDouble(parts[1]),
-                Double.parseDouble(parts[2]),
-                ActivityIntensity.valueOf(parts[3]),
-                Double.parseDouble(parts[4]),
-                Double.parseDouble(parts[5]),
-                Double.parseDouble(parts[6]),
-                GlycemicIndexType.valueOf(parts[7])
-            ));
+    public void dispose() {
+        if (kieSession != null) {
+            kieSession.dispose();
+            kieSession = null;
         }
-
-        return templates;
     }
 
-    @SneakyThrows
-    private List<TrendClassifyTemplate> loadTrendClassifyData() {
-        InputStream csv = RuleEngineSession.class.getResourceAsStream("/rules/trend-classify.csv");
-        assert csv != null;
-
-        List<TrendClassifyTemplate> templates = new java.util.ArrayList<>();
-        BufferedReader reader = new BufferedReader(new InputStreamReader(csv));
-
-        String line;
-        reader.readLine(); // Skip header
+    private void insertFact(Object fact) {
+        FactHandle handle = kieSession.insert(fact);
+        cold = false;
+        retain(fact, handle);
+        if (fact instanceof GlucoseMeasurement) {
+            trackLatest((GlucoseMeasurement) fact);
+        }
+    }
 
-        while ((line = reader.readLine()) != null) {
-            if (line.trim().isEmpty()) continue;
-            String[] parts = line.split("\\|");
-            templates.add(new TrendClassifyTemplate(
-                parts[0],
-                parts[1],
-                TrendType.valueOf(parts[2]),
-                Integer.parseInt(parts[3])
-            ));
+    private void trackLatest(GlucoseMeasurement gm) {
+        if (latest == null) {
+            latest = new LatestGlucose(gm.getValue(), gm.getTimestamp());
+            latestHandle = kieSession.insert(latest);
+        } else if (gm.getTimestamp() >= latest.getTimestamp()) {
+            latest.setValue(gm.getValue());
+            latest.setTimestamp(gm.getTimestamp());
+            kieSession.update(latestHandle, latest);
         }
+    }
 
-        return templates;
+    private int fire() {
+        try {
+            if (metrics == null) return kieSession.fireAllRules();
+            long start = System.nanoTime();
+            int fired = kieSession.fireAllRules();
+            metrics.fireAllRules(System.nanoTime() - start, fired);
+            return fired;
+        } finally {
+            dispatch();
+        }
     }
 
-    @SneakyThrows
-    private List<SuggestNoFoodTemplate> loadSuggestNoFoodData() {
-        InputStream csv = RuleEngineSession.class.getResourceAsStream("/rules/suggest-no-food.csv");
-        assert csv != null;
+    // Consequences only collect, publishing happens here once the agenda is done, in emission order
+    private void dispatch() {
+        if (emitted.isEmpty()) return;
+        List<Object> batch = new ArrayList<>(emitted.size());
+        long now = kieSession.getSessionClock().getCurrentTime();
+        for (Object emission : emitted) {
+            // Replayed input runs through the gate too, so it ends in the state it had before the restart
+            if (emission instanceof Trend && trendGate != null) {
+                TrendStabilizer.Verdict verdict = trendGate.check((Trend) emission, trendConfig, now);
+                if (metrics != null && !replaying) metrics.trend(verdict);
+                if (verdict != TrendStabilizer.Verdict.PUBLISH) continue;
+            }
+            batch.add(emission);
+        }
+        emitted.clear();
+        if (!replaying && !batch.isEmpty()) publisher.publish(patientId, batch);
+    }
 
-        List<SuggestNoFoodTemplate> templates = new java.util.ArrayList<>();
-        BufferedReader reader = new BufferedReader(new InputStreamReader(csv));
+    private void retain(Object fact, FactHandle handle) {
+        long keepMillis = retention.retentionMillis(fact.getClass());
+        if (keepMillis >= 0) {
+            retained.computeIfAbsent(fact.getClass(), k -> new PriorityQueue<>(Retained.OLDEST_FIRST))
+                    .add(new Retained(RetentionPolicy.timestampOf(fact) + keepMillis, handle, retainedCount++));
+        }
+    }
 
-        String line;
-        reader.readLine(); // Skip header
-        while ((line = reader.readLine()) != null) {
-            if (line.trim().isEmpty()) continue;
-            String[] parts = line.split("\\|");
-            templates.add(new SuggestNoFoodTemplate(
-                parts[0],
-                GlycemicIndexType.valueOf(parts[1]),
-                parts[2],
-                parts[3]
-            ));
+    /**
+     * Deletes facts whose retention ran out on the session clock, then recounts what is left.
+     * Facts the engine already expired on its own are only forgotten.
+     */
+    private void enforceRetention() {
+        long now = kieSession.getSessionClock().getCurrentTime();
+        for (PriorityQueue<Retained> queue : retained.values()) {
+            while (!queue.isEmpty() && queue.peek().expiresAt <= now) {
+                FactHandle handle = queue.poll().handle;
+                if (kieSession.getObject(handle) != null)
+                    kieSession.delete(handle);
+            }
         }
-        return templates;
+        factCounter.recount(kieSession.getObjects());
     }
 
-    @SneakyThrows
-    private List<SuggestFoodTemplate> loadSuggestFoodData() {
-        InputStream csv = RuleEngineSession.class.getResourceAsStream("/rules/suggest-food.csv");
-        assert csv != null;
+    private void updateTime() {
+        advanceTo(clock.getAsLong());
+    }
 
-        List<SuggestFoodTemplate> templates = new java.util.ArrayList<>();
-        BufferedReader reader = new BufferedReader(new InputStreamReader(csv));
+    // The session clock only moves forward
+    private void advanceTo(long time) {
+        SessionPseudoClock clock = kieSession.getSessionClock();
+        long ahead = time - clock.getCurrentTime();
+        if (ahead > 0)
+            clock.advanceTime(ahead, java.util.concurrent.TimeUnit.MILLISECONDS);
+    }
 
-        String line;
-        reader.readLine(); // Skip header
-        while ((line = reader.readLine()) != null) {
-            if (line.trim().isEmpty()) continue;
-            String[] parts = line.split("\\|");
-            templates.add(new SuggestFoodTemplate(
-                parts[0],
-                GlycemicIndexType.valueOf(parts[1]),
-                parts[2]
-            ));
-        }
-        return templates;
+    private void touch() {
+        lastActivity = System.currentTimeMillis();
     }
 
-    // templateResourcePath, Action<List<T>> dataLoader) {
-    private String loadTemplate(String templateResourcePath, Supplier<List<?>> dataLoader) {
-        InputStream template = RuleEngineSession.class.getResourceAsStream(templateResourcePath);
-        List<?> data = dataLoader.get();
+    private static final class Retained {
+        static final Comparator<Retained> OLDEST_FIRST = Comparator.comparingLong(r -> r.expiresAt);
+        static final Comparator<Retained> INSERT_ORDER = Comparator.comparingLong(r -> r.inserted);
+
+        final long expiresAt;
+        final FactHandle handle;
+        final long inserted;
 
-        ObjectDataCompiler converter = new ObjectDataCompiler();
-        return converter.compile(data, template);
+        Retained(long expiresAt, FactHandle handle, long inserted) {
+            this.expiresAt = expiresAt;
+            this.handle = handle;
+            this.inserted = inserted;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,255 @@
+package com.ftn.sbnz.gcm.service.service;
+
+import com.ftn.sbnz.gcm.service.journal.InputLog;
+import com.ftn.sbnz.gcm.service.journal.PatientJournal;
+import com.ftn.sbnz.gcm.service.journal.SessionJournal;
+import com.ftn.sbnz.gcm.service.rules.KieBaseHolder;
+import com.ftn.sbnz.gcm.service.rules.RetentionPolicy;
+import com.ftn.sbnz.gcm.service.rules.RuleMetrics;
+import com.ftn.sbnz.gcm.service.rules.TrendStabilizer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps one {@link RuleEngineSession} per patient.
+ * Every patient is pinned to one of N single-threaded shards, so a session is only ever touched by one thread
+ * while sessions of different patients fire in parallel.
+ * <p>
+ * With the journal enabled a session is recovered from its last snapshot and input log when it is created,
+ * and snapshotted again every few thousand inputs, when it is evicted and on shutdown.
+ * Journaled sessions are recovered at startup: the clock of a restored session is where the previous run left it,
+ * and {@link ClockService} has to catch up with it before it stamps new readings, or they would land in the past.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RuleEngineSessionManager {
+
+    public static final String DEFAULT_PATIENT = "default";
+
+    private final KieBaseHolder kieBaseHolder;
+    private final ClockService clockService;
+    private final RuleEventPublisher publisher;
+    private final RetentionPolicy retentionPolicy;
+    private final FoodCatalogIndex foodCatalog;
+    private final MeterRegistry meterRegistry;
+    private final SessionJournal sessionJournal;
+    private final RuleMetrics ruleMetrics;
+    private final TrendStabilizer trendStabilizer;
+
+    @Value("${rules.sessions.shards:0}")
+    private int shardCount;
+
+    @Value("${rules.sessions.idle-timeout-minutes:120}")
+    private long idleTimeoutMinutes;
+
+    private final Map<String, RuleEngineSession> sessions = new ConcurrentHashMap<>();
+    private final Map<String, PatientJournal> journals = new ConcurrentHashMap<>();
+    private ExecutorService[] shards;
+
+    @PostConstruct
+    public void start() {
+        int n = shardCount > 0 ? shardCount : Runtime.getRuntime().availableProcessors();
+        shards = new ExecutorService[n];
+        for (int i = 0; i < n; i++) {
+            String name = "rules-shard-" + i;
+            shards[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        for (Class<?> type : retentionPolicy.types()) {
+            Gauge.builder("rules.facts", sessions, m -> m.values().stream().mapToLong(s -> s.factCount(type)).sum())
+                    .description("Facts in working memory, all patients")
+                    .tag("type", type.getSimpleName())
+                    .register(meterRegistry);
+        }
+        // Compile the rule base up front instead of on the first request
+        kieBaseHolder.getKieBase();
+        if (sessionJournal.isEnabled()) recoverJournaled();
+    }
+
+    private void recoverJournaled() {
+        try {
+            List<CompletableFuture<Void>> recovered = sessionJournal.patients().stream()
+                    .map(patientId -> execute(patientId, session -> {}))
+                    .collect(Collectors.toList());
+            CompletableFuture.allOf(recovered.toArray(new CompletableFuture[0])).join();
+            if (!recovered.isEmpty())
+                log.info("Recovered {} journaled rule sessions, clock moved {} ms ahead", recovered.size(), clockService.getOffset());
+        } catch (RuntimeException e) {
+            log.error("Could not recover every journaled rule session", e);
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        // Queued behind pending work, so the snapshots include it
+        sessions.forEach((patientId, session) -> shardFor(patientId).execute(() -> snapshot(session)));
+        for (ExecutorService shard : shards) {
+            shard.shutdown();
+        }
+        for (ExecutorService shard : shards) {
+            shard.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        sessions.values().forEach(RuleEngineSession::dispose);
+        sessions.clear();
+        journals.values().forEach(PatientJournal::close);
+        journals.clear();
+    }
+
+    public <T> CompletableFuture<T> submit(String patientId, Function<RuleEngineSession, T> work) {
+        return CompletableFuture.supplyAsync(() -> {
+            RuleEngineSession session = sessionFor(patientId);
+            T result = work.apply(session);
+            PatientJournal journal = journals.get(patientId);
+            if (journal != null && journal.isSnapshotDue()) snapshot(session);
+            return result;
+        }, shardFor(patientId));
+    }
+
+    public CompletableFuture<Void> execute(String patientId, Consumer<RuleEngineSession> work) {
+        return submit(patientId, session -> {
+            work.accept(session);
+            return null;
+        });
+    }
+
+    /**
+     * Runs the action while every shard is parked between tasks, so no session fires during it.
+     * Used to change the shared KieBase under live sessions.
+     */
+    public void runExclusive(Runnable action) {
+        CountDownLatch parked = new CountDownLatch(shards.length);
+        CountDownLatch release = new CountDownLatch(1);
+        for (ExecutorService shard : shards) {
+            shard.execute(() -> {
+                parked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        try {
+            if (!parked.await(30, TimeUnit.SECONDS))
+                throw new IllegalStateException("Rule shards did not pause within 30 s");
+            action.run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while pausing rule shards", e);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /** Live fact counts per type of the patient's session, empty if it has none. */
+    public Map<String, Long> getFactCounts(String patientId) {
+        RuleEngineSession session = sessions.get(patientId);
+        return session == null ? Collections.emptyMap() : session.factCounts();
+    }
+
+    @Scheduled(fixedDelayString = "${rules.sessions.evict-interval-ms:60000}")
+    public void evictIdle() {
+        long cutoff = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(idleTimeoutMinutes);
+        sessions.forEach((patientId, session) -> {
+            if (session.getLastActivity() >= cutoff) return;
+            // Re-check on the owning shard, work may have been queued in the meantime
+            shardFor(patientId).execute(() -> {
+                if (session.getLastActivity() < cutoff && sessions.remove(patientId, session)) {
+                    snapshot(session);
+                    session.dispose();
+                    PatientJournal journal = journals.remove(patientId);
+                    if (journal != null) journal.close();
+                    log.info("Evicted idle rule session of patient {}", patientId);
+                }
+            });
+        });
+    }
+
+    // Only called from the patient's shard
+    private RuleEngineSession sessionFor(String patientId) {
+        return sessions.computeIfAbsent(patientId, this::openSession);
+    }
+
+    private RuleEngineSession openSession(String patientId) {
+        PatientJournal journal = sessionJournal.isEnabled() ? sessionJournal.open(patientId) : null;
+        RuleEngineSession session = new RuleEngineSession(patientId, kieBaseHolder, clockService::now, publisher,
+                retentionPolicy, foodCatalog, journal != null ? journal : InputLog.NONE);
+        session.instrument(ruleMetrics.forSession());
+        session.stabilize(trendStabilizer.forSession());
+        session.initSession();
+        if (journal != null) {
+            recover(session, journal);
+            journals.put(patientId, journal);
+            clockService.catchUp(session.getSessionTime());
+        }
+        return session;
+    }
+
+    private void recover(RuleEngineSession session, PatientJournal journal) {
+        long start = System.nanoTime();
+        try {
+            if (journal.recover(session::restore, session::replay))
+                log.info("Recovered rule session of patient {} in {} ms", session.getPatientId(), (System.nanoTime() - start) / 1_000_000);
+            return;
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            // Typically a snapshot taken with rules that changed since
+            log.warn("Could not restore snapshot of patient {}, replaying the log alone", session.getPatientId(), e);
+        }
+        try {
+            journal.discardSnapshot();
+            session.initSession();
+            journal.recover(in -> {}, session::replay);
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            log.error("Could not replay the log of patient {}, starting empty", session.getPatientId(), e);
+            try {
+                journal.discardLog();
+            } catch (IOException ex) {
+                log.error("Could not move the log of patient {} aside", session.getPatientId(), ex);
+            }
+            session.initSession();
+        }
+    }
+
+    private void snapshot(RuleEngineSession session) {
+        PatientJournal journal = journals.get(session.getPatientId());
+        if (journal == null) return;
+        try {
+            journal.snapshot(session::writeSnapshot);
+        } catch (IOException | RuntimeException e) {
+            log.error("Could not snapshot rule session of patient {}", session.getPatientId(), e);
+        }
+    }
+
+    private ExecutorService shardFor(String patientId) {
+        return shards[Math.floorMod(patientId.hashCode(), shards.length)];
+    }
+}
@@ -0,0 +1,24 @@
+package com.ftn.sbnz.gcm.service.service;
+
+import com.ftn.sbnz.gcm.model.models.Suggestion;
+import com.ftn.sbnz.gcm.model.models.Trend;
+
+import java.util.List;
+
+/**
+ * Receives what the rules send on the "trend" and "sugg" channels of a patient's session.
+ * Called on the patient's shard after fireAllRules returned, never from inside a consequence.
+ */
+public interface RuleEventPublisher {
+    void trend(String patientId, Trend trend);
+
+    void suggestion(String patientId, Suggestion suggestion);
+
+    /** Everything one fireAllRules sent, in the order it was sent. */
+    default void publish(String patientId, List<Object> emissions) {
+        for (Object emission : emissions) {
+            if (emission instanceof Trend) trend(patientId, (Trend) emission);
+            else if (emission instanceof Suggestion) suggestion(patientId, (Suggestion) emission);
+        }
+    }
+}
@@ -29,8 +29,6 @@ public class SensorService {
         var req = RequestEntity.get(uri).build();
         var resp = restTemplate.exchange(req, new ParameterizedTypeReference<List<GlucoseMessage>>() {});
 
-        assert resp.getBody() != null;
-        resp.getBody().forEach(System.out::println);
-        return resp.getBody();
+        return resp.getBody() == null ? List.of() : resp.getBody();
     }
 }
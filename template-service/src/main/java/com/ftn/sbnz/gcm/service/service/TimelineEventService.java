@@ -1,11 +1,15 @@
 package com.ftn.sbnz.gcm.service.service;
 
+import com.ftn.sbnz.gcm.model.enums.ActivityIntensity;
+import com.ftn.sbnz.gcm.model.enums.EventType;
 import com.ftn.sbnz.gcm.model.models.*;
 import com.ftn.sbnz.gcm.service.dto.TimelineEventDtos;
-import com.ftn.sbnz.gcm.service.repository.FoodRepository;
+import com.ftn.sbnz.gcm.service.ingest.IngestionPipeline;
 import com.ftn.sbnz.gcm.service.repository.TimelineEventRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.server.ResponseStatusException;
 
 import javax.transaction.Transactional;
@@ -19,35 +23,87 @@ import static org.springframework.http.HttpStatus.BAD_REQUEST;
 @RequiredArgsConstructor
 public class TimelineEventService {
 
+    public static final int MAX_PAGE = 5000;
+    // Sorts before every other id, so the first page starts at the earliest event
+    private static final String FIRST_ID = new UUID(0, 0).toString();
+
     private final TimelineEventRepository timelineEventRepository;
-    private final FoodRepository foodRepository;
-    private final RuleEngineSession ruleEngineSession;
+    private final FoodCatalogCache foodCatalog;
+    private final IngestionPipeline ingestionPipeline;
 
-    public TimelineEventDtos.TimelineEventListDto list(Long from, Long to) {
-        List<TimelineEventDtos.FoodEventDto> foodEvents = timelineEventRepository.findFoodEventsInRange(from, to).stream()
-                .map(TimelineEventDtos.FoodEventDto::fromEntity)
-                .collect(Collectors.toList());
-        List<TimelineEventDtos.InsulinEventDto> insulinEvents = timelineEventRepository.findInsulinEventsInRange(from, to).stream()
-                .map(TimelineEventDtos.InsulinEventDto::fromEntity)
-                .collect(Collectors.toList());
-        List<TimelineEventDtos.ActivityEventDto> activityEvents = timelineEventRepository.findActivityEventsInRange(from, to).stream()
-                .map(TimelineEventDtos.ActivityEventDto::fromEntity)
+    /**
+     * One page of the timeline in {@code (at, id)} order, starting after the {@code after} cursor of the previous page.
+     * Missing bounds leave that side open; the page size keeps the response bounded either way.
+     */
+    public TimelineEventDtos.TimelinePageDto list(Long from, Long to, String after, int limit) {
+        if (limit <= 0 || limit > MAX_PAGE)
+            throw new ResponseStatusException(BAD_REQUEST, "Page size must be between 1 and " + MAX_PAGE + ".");
+        long afterAt = Long.MIN_VALUE;
+        String afterId = FIRST_ID;
+        if (after != null) {
+            int split = after.indexOf('_');
+            try {
+                afterAt = Long.parseLong(after.substring(0, split));
+                afterId = UUID.fromString(after.substring(split + 1)).toString();
+            } catch (RuntimeException e) {
+                throw new ResponseStatusException(BAD_REQUEST, "Malformed cursor " + after + ".");
+            }
+        }
+
+        // One row more than asked tells whether another page follows
+        List<TimelineEventRepository.TimelineRow> rows = timelineEventRepository.findPage(
+                from != null ? from : Long.MIN_VALUE, to != null ? to : Long.MAX_VALUE, afterAt, afterId, limit + 1);
+        boolean more = rows.size() > limit;
+        if (more) rows = rows.subList(0, limit);
+
+        Map<UUID, List<TimelineEventDtos.FoodAmountDto>> amounts = foodAmounts(rows);
+        List<TimelineEventDtos.TimelineEventDto> events = new ArrayList<>(rows.size());
+        for (TimelineEventRepository.TimelineRow row : rows) {
+            UUID id = UUID.fromString(row.getId());
+            switch (EventType.valueOf(row.getType())) {
+                case INSULIN:
+                    events.add(new TimelineEventDtos.InsulinEventDto(id, EventType.INSULIN, row.getAt(), row.getAmount()));
+                    break;
+                case ACTIVITY:
+                    events.add(new TimelineEventDtos.ActivityEventDto(id, EventType.ACTIVITY, row.getAt(), row.getDuration(),
+                            ActivityIntensity.valueOf(row.getIntensity())));
+                    break;
+                default:
+                    events.add(new TimelineEventDtos.FoodEventDto(id, EventType.FOOD, row.getAt(),
+                            amounts.getOrDefault(id, Collections.emptyList())));
+            }
+        }
+        TimelineEventRepository.TimelineRow last = more ? rows.get(rows.size() - 1) : null;
+        return new TimelineEventDtos.TimelinePageDto(events, last == null ? null : last.getAt() + "_" + last.getId());
+    }
+
+    // Amounts of all food events of the page in one query instead of one per event
+    private Map<UUID, List<TimelineEventDtos.FoodAmountDto>> foodAmounts(List<TimelineEventRepository.TimelineRow> rows) {
+        List<UUID> foodEvents = rows.stream()
+                .filter(row -> EventType.FOOD.name().equals(row.getType()))
+                .map(row -> UUID.fromString(row.getId()))
                 .collect(Collectors.toList());
-        return new TimelineEventDtos.TimelineEventListDto(foodEvents, insulinEvents, activityEvents);
+        Map<UUID, List<TimelineEventDtos.FoodAmountDto>> amounts = new HashMap<>();
+        if (foodEvents.isEmpty()) return amounts;
+        for (Object[] amount : timelineEventRepository.findFoodAmounts(foodEvents)) {
+            amounts.computeIfAbsent((UUID) amount[0], k -> new ArrayList<>())
+                    .add(new TimelineEventDtos.FoodAmountDto((UUID) amount[1], (Integer) amount[2]));
+        }
+        return amounts;
     }
 
     @Transactional
-    public TimelineEventDtos.FoodEventDto create(@Valid TimelineEventDtos.FoodEventDto in) {
-        List<Food> foods = foodRepository.findAllByIdIn(in.getAmount().stream().map(TimelineEventDtos.FoodAmountDto::getId).collect(Collectors.toList()));
+    public TimelineEventDtos.FoodEventDto create(String patientId, @Valid TimelineEventDtos.FoodEventDto in) {
+        Map<UUID, Food> foods = foodCatalog.find(in.getAmount().stream().map(TimelineEventDtos.FoodAmountDto::getId).collect(Collectors.toList()));
         List<FoodAmount> amounts = new ArrayList<>();
         for (TimelineEventDtos.FoodAmountDto fad : in.getAmount()) {
-            Optional<Food> of = foods.stream().filter(f -> f.getId().equals(fad.getId())).findFirst();
-            if (of.isEmpty()) {
+            Food food = foods.get(fad.getId());
+            if (food == null) {
                 throw new ResponseStatusException(BAD_REQUEST, "Food with id " + fad.getId() + " not found.");
             }
 
             FoodAmount amount = new FoodAmount();
-            amount.setFood(of.get());
+            amount.setFood(food);
             amount.setQuantity(fad.getQuantity());
             amounts.add(amount);
         }
@@ -55,29 +111,45 @@ public class TimelineEventService {
 
         fe = timelineEventRepository.save(fe);
 
-        ruleEngineSession.insertEvent(fe);
+        insertEvent(patientId, fe);
         return TimelineEventDtos.FoodEventDto.fromEntity(fe);
     }
 
     @Transactional
-    public TimelineEventDtos.InsulinEventDto create(@Valid TimelineEventDtos.InsulinEventDto in) {
+    public TimelineEventDtos.InsulinEventDto create(String patientId, @Valid TimelineEventDtos.InsulinEventDto in) {
         if (in.getAmount() <= 0) {
             throw new ResponseStatusException(BAD_REQUEST, "Insulin amount must be positive.");
         }
         InsulinEvent ie = new InsulinEvent(null, in.getAt(), in.getAmount());
         ie = timelineEventRepository.save(ie);
 
-        ruleEngineSession.insertEvent(ie);
-        System.out.println(ie);
+        insertEvent(patientId, ie);
         return TimelineEventDtos.InsulinEventDto.fromEntity(ie);
     }
 
     @Transactional
-    public TimelineEventDtos.ActivityEventDto create(@Valid TimelineEventDtos.ActivityEventDto in) {
+    public TimelineEventDtos.ActivityEventDto create(String patientId, @Valid TimelineEventDtos.ActivityEventDto in) {
         ActivityEvent ae = new ActivityEvent(null, in.getAt(), in.getDuration(), in.getIntensity());
         ae = timelineEventRepository.save(ae);
 
-        ruleEngineSession.insertEvent(ae);
+        insertEvent(patientId, ae);
         return TimelineEventDtos.ActivityEventDto.fromEntity(ae);
     }
+
+    /**
+     * Hands the event to the rule engine once the transaction saving it committed,
+     * so the session and its input log never hold an event the database rolled back.
+     */
+    private void insertEvent(String patientId, TimelineEvent event) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            ingestionPipeline.enqueue(patientId, event);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                ingestionPipeline.enqueue(patientId, event);
+            }
+        });
+    }
 }
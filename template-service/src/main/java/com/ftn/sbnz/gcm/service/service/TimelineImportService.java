@@ -0,0 +1,193 @@
+package com.ftn.sbnz.gcm.service.service;
+
+import com.ftn.sbnz.gcm.model.enums.ActivityIntensity;
+import com.ftn.sbnz.gcm.model.models.*;
+import com.ftn.sbnz.gcm.service.dto.TimelineEventDtos;
+import com.ftn.sbnz.gcm.service.dto.TimelineImportStatsDto;
+import com.ftn.sbnz.gcm.service.replay.TraceRecord;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.persistence.EntityManager;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+
+/**
+ * Imports a patient's logbook in one go: every line is validated and every referenced food resolved
+ * against the catalog cache before anything is written, then the events are persisted in time order through JDBC batches
+ * and handed to the rule session one chunk, and one fireAllRules, at a time.
+ * <p>
+ * Lines use the trace format of {@link TraceRecord}, as NDJSON or as CSV with the header
+ * {@code type,at,amount,duration,intensity,foods} where foods is {@code <id>:<quantity>;...}.
+ */
+@Service
+@RequiredArgsConstructor
+public class TimelineImportService {
+
+    private final FoodCatalogCache foodCatalog;
+    private final RuleEngineSessionManager sessionManager;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+
+    // Flush and clear the persistence context, and fire the rules, every this many events
+    @Value("${timeline.import.chunk-size:1000}")
+    private int chunkSize;
+
+    public TimelineImportStatsDto importEvents(String patientId, Iterator<TraceRecord> records) {
+        long start = System.nanoTime();
+
+        List<TraceRecord> lines = new ArrayList<>();
+        Set<UUID> foodIds = new HashSet<>();
+        int skipped = 0;
+        for (int line = 1; records.hasNext(); line++) {
+            TraceRecord record = records.next();
+            if (record.getType() == TraceRecord.Type.GLUCOSE) {
+                skipped++;
+                continue;
+            }
+            validate(record, line);
+            if (record.getFoods() != null) {
+                record.getFoods().forEach(fad -> foodIds.add(fad.getId()));
+            }
+            lines.add(record);
+        }
+        Map<UUID, Food> foods = foodCatalog.find(foodIds);
+        for (UUID id : foodIds) {
+            if (!foods.containsKey(id))
+                throw new ResponseStatusException(BAD_REQUEST, "Food with id " + id + " not found.");
+        }
+        lines.sort(Comparator.comparingLong(TraceRecord::getT));
+        List<TimelineEvent> events = lines.stream().map(record -> toEvent(record, foods)).collect(Collectors.toList());
+        long parsed = System.nanoTime();
+
+        transactionTemplate.executeWithoutResult(status -> persist(events));
+        long persisted = System.nanoTime();
+
+        // Only after the commit, the session must not see events that were rolled back
+        for (int from = 0; from < events.size(); from += chunkSize) {
+            List<TimelineEvent> chunk = events.subList(from, Math.min(from + chunkSize, events.size()));
+            sessionManager.execute(patientId, engine -> engine.insertAll(chunk)).join();
+        }
+        long done = System.nanoTime();
+
+        long nanos = done - start;
+        return new TimelineImportStatsDto(
+                events.size(),
+                skipped,
+                events.isEmpty() ? null : events.get(0).getAt(),
+                events.isEmpty() ? null : events.get(events.size() - 1).getAt(),
+                (parsed - start) / 1_000_000,
+                (persisted - parsed) / 1_000_000,
+                (done - persisted) / 1_000_000,
+                nanos == 0 ? 0 : events.size() * 1_000_000_000L / nanos);
+    }
+
+    /** Reads CSV lines into trace records, the first line is the header. */
+    public static Iterator<TraceRecord> readCsv(BufferedReader reader) throws IOException {
+        String header = reader.readLine();
+        if (header == null) return Collections.emptyIterator();
+        List<String> columns = Arrays.asList(header.trim().toLowerCase().split(","));
+        List<TraceRecord> records = new ArrayList<>();
+        String line;
+        for (int n = 2; (line = reader.readLine()) != null; n++) {
+            if (line.trim().isEmpty()) continue;
+            try {
+                records.add(csvRecord(columns, line.split(",", -1)));
+            } catch (IllegalArgumentException e) {
+                throw new ResponseStatusException(BAD_REQUEST, "Line " + n + ": " + e.getMessage());
+            }
+        }
+        return records.iterator();
+    }
+
+    // Inserts are ordered by table and batched, see hibernate.jdbc.batch_size
+    private void persist(List<TimelineEvent> events) {
+        for (int i = 0; i < events.size(); i++) {
+            entityManager.persist(events.get(i));
+            if ((i + 1) % chunkSize == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private static void validate(TraceRecord record, int line) {
+        String problem = null;
+        if (record.getType() == null) {
+            problem = "missing type";
+        } else if (record.getType() == TraceRecord.Type.INSULIN) {
+            if (record.getAmount() == null || record.getAmount() <= 0) problem = "insulin amount must be positive";
+        } else if (record.getType() == TraceRecord.Type.ACTIVITY) {
+            if (record.getDuration() == null || record.getIntensity() == null) problem = "activity needs duration and intensity";
+        } else if (record.getFoods() == null || record.getFoods().isEmpty()) {
+            problem = "food event without foods";
+        }
+        if (problem != null) throw new ResponseStatusException(BAD_REQUEST, "Line " + line + ": " + problem + ".");
+    }
+
+    private static TimelineEvent toEvent(TraceRecord record, Map<UUID, Food> foods) {
+        switch (record.getType()) {
+            case INSULIN:
+                return new InsulinEvent(null, record.getT(), record.getAmount());
+            case ACTIVITY:
+                return new ActivityEvent(null, record.getT(), record.getDuration(), record.getIntensity());
+            default:
+                List<FoodAmount> amounts = new ArrayList<>(record.getFoods().size());
+                for (TimelineEventDtos.FoodAmountDto fad : record.getFoods()) {
+                    FoodAmount amount = new FoodAmount();
+                    amount.setFood(foods.get(fad.getId()));
+                    amount.setQuantity(fad.getQuantity());
+                    amounts.add(amount);
+                }
+                return new FoodEvent(null, record.getT(), amounts);
+        }
+    }
+
+    private static TraceRecord csvRecord(List<String> columns, String[] values) {
+        TraceRecord record = new TraceRecord();
+        for (int i = 0; i < columns.size() && i < values.length; i++) {
+            String value = values[i].trim();
+            if (value.isEmpty()) continue;
+            switch (columns.get(i)) {
+                case "type":
+                    record.setType(TraceRecord.Type.valueOf(value.toUpperCase()));
+                    break;
+                case "at":
+                case "t":
+                    record.setT(Long.parseLong(value));
+                    break;
+                case "amount":
+                    record.setAmount(Integer.valueOf(value));
+                    break;
+                case "duration":
+                    record.setDuration(Integer.valueOf(value));
+                    break;
+                case "intensity":
+                    record.setIntensity(ActivityIntensity.valueOf(value.toUpperCase()));
+                    break;
+                case "foods":
+                    List<TimelineEventDtos.FoodAmountDto> amounts = new ArrayList<>();
+                    for (String item : value.split(";")) {
+                        String[] idAndQuantity = item.split(":");
+                        if (idAndQuantity.length != 2) throw new IllegalArgumentException("expected <food id>:<quantity>, got " + item);
+                        amounts.add(new TimelineEventDtos.FoodAmountDto(UUID.fromString(idAndQuantity[0].trim()),
+                                Integer.parseInt(idAndQuantity[1].trim())));
+                    }
+                    record.setFoods(amounts);
+                    break;
+                default:
+                    // Unknown columns are ignored, like unknown NDJSON fields
+            }
+        }
+        return record;
+    }
+}
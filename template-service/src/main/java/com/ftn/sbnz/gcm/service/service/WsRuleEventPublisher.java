@@ -0,0 +1,50 @@
+package com.ftn.sbnz.gcm.service.service;
+
+import com.ftn.sbnz.gcm.model.models.Suggestion;
+import com.ftn.sbnz.gcm.model.models.SuggestionMessage;
+import com.ftn.sbnz.gcm.model.models.Trend;
+import com.ftn.sbnz.gcm.model.models.TrendMessage;
+import com.ftn.sbnz.gcm.service.ws.StreamHandler;
+import com.ftn.sbnz.gcm.service.ws.SuggestionHandler;
+import com.ftn.sbnz.gcm.service.ws.TrendHandler;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Component
+@RequiredArgsConstructor
+public class WsRuleEventPublisher implements RuleEventPublisher {
+    private final TrendHandler trendHandler;
+    private final SuggestionHandler suggestionHandler;
+    private final StreamHandler streamHandler;
+    private final ClockService clockService;
+
+    @Override
+    public void publish(String patientId, List<Object> emissions) {
+        // One clock read per batch, suggestions of the same firing share their time
+        long now = clockService.now();
+        for (Object emission : emissions) {
+            if (emission instanceof Trend) {
+                trend(patientId, (Trend) emission);
+            } else if (emission instanceof Suggestion) {
+                String text = ((Suggestion) emission).getText();
+                suggestionHandler.send(patientId, new SuggestionMessage(now, text));
+                streamHandler.suggestion(patientId, now, text);
+            }
+        }
+    }
+
+    @Override
+    public void trend(String patientId, Trend trend) {
+        trendHandler.send(patientId, new TrendMessage(trend.toArrow()));
+        streamHandler.trend(patientId, trend);
+    }
+
+    @Override
+    public void suggestion(String patientId, Suggestion suggestion) {
+        long now = clockService.now();
+        suggestionHandler.send(patientId, new SuggestionMessage(now, suggestion.getText()));
+        streamHandler.suggestion(patientId, now, suggestion.getText());
+    }
+}
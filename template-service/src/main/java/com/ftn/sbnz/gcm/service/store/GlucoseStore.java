@@ -0,0 +1,136 @@
+package com.ftn.sbnz.gcm.service.store;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only store of every glucose reading, per patient, in memory-mapped segment files
+ * under {@code glucose.store.dir/<patient>/}. A write is two puts into a mapping, no JPA and no syscall;
+ * dirty pages are flushed every few seconds and when a segment fills up.
+ * <p>
+ * Range scans hand readings to a {@link ReadingConsumer} straight from the mapping, without objects per reading.
+ * Readings come back in the order they were stored, which is time order unless a backfill arrived late;
+ * compaction sorts such segments and drops the ones past retention.
+ */
+@Slf4j
+@Component
+public class GlucoseStore {
+
+    public interface ReadingConsumer {
+        void accept(long t, double mmol);
+    }
+
+    @Value("${glucose.store.enabled:true}")
+    private boolean enabled;
+
+    @Value("${glucose.store.dir:data/glucose}")
+    private String dir;
+
+    // 16 MB files of 16 byte readings
+    @Value("${glucose.store.segment-readings:1048576}")
+    private int segmentReadings;
+
+    @Value("${glucose.store.retention:3650d}")
+    private Duration retention;
+
+    private final Map<String, PatientSeries> series = new ConcurrentHashMap<>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Never throws, a reading that cannot be stored is logged and the live path goes on. */
+    public void append(String patientId, long t, double mmol) {
+        if (!enabled) return;
+        try {
+            seriesOf(patientId).append(t, mmol);
+        } catch (UncheckedIOException e) {
+            log.error("Could not store glucose reading of patient {}", patientId, e);
+        }
+    }
+
+    /** Readings with {@code from <= t <= to}. */
+    public void scan(String patientId, long from, long to, ReadingConsumer consumer) {
+        scan(patientId, from, to, Integer.MAX_VALUE, consumer);
+    }
+
+    /**
+     * The first {@code limit} readings with {@code from <= t <= to}, segments past the limit are not read.
+     * @return number of readings handed to the consumer
+     */
+    public int scan(String patientId, long from, long to, int limit, ReadingConsumer consumer) {
+        PatientSeries patientSeries = existing(patientId);
+        return patientSeries == null ? 0 : patientSeries.scan(from, to, limit, consumer);
+    }
+
+    public long count(String patientId) {
+        PatientSeries patientSeries = existing(patientId);
+        return patientSeries == null ? 0 : patientSeries.count();
+    }
+
+    @Scheduled(fixedDelayString = "${glucose.store.flush-interval-ms:5000}")
+    public void flush() {
+        series.values().forEach(PatientSeries::force);
+    }
+
+    /** Retention is measured back from each patient's newest reading, so simulated clocks age data too. */
+    @Scheduled(fixedDelayString = "${glucose.store.compact-interval-ms:3600000}")
+    public void compact() {
+        series.forEach((patientId, patientSeries) -> {
+            long newest = patientSeries.newest();
+            if (newest == Long.MIN_VALUE) return;
+            try {
+                int changed = patientSeries.compact(newest - retention.toMillis());
+                if (changed > 0) log.info("Compacted {} glucose segments of patient {}", changed, patientId);
+            } catch (IOException e) {
+                log.error("Could not compact glucose segments of patient {}", patientId, e);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void close() {
+        flush();
+    }
+
+    // Reads of patients never stored leave no directory behind
+    private PatientSeries existing(String patientId) {
+        if (!enabled) return null;
+        PatientSeries patientSeries = series.get(patientId);
+        if (patientSeries != null || !Files.isDirectory(directoryOf(patientId))) return patientSeries;
+        return seriesOf(patientId);
+    }
+
+    private PatientSeries seriesOf(String patientId) {
+        return series.computeIfAbsent(patientId, id -> {
+            try {
+                return PatientSeries.open(directoryOf(id), segmentReadings);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not open glucose store of patient " + id, e);
+            }
+        });
+    }
+
+    private Path directoryOf(String patientId) {
+        try {
+            // Patient ids come from request parameters, keep them from escaping the store directory
+            return Paths.get(dir).resolve(URLEncoder.encode(patientId, "UTF-8").replace(".", "%2E"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
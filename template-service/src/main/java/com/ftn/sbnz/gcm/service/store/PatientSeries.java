@@ -0,0 +1,163 @@
+package com.ftn.sbnz.gcm.service.store;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The segments of one patient, oldest first. Appends and compaction lock the series,
+ * scans read whatever segment array is current and never lock.
+ */
+@Slf4j
+final class PatientSeries {
+
+    private static final String SUFFIX = ".seg";
+
+    private final Path dir;
+    private final int segmentCapacity;
+    private volatile Segment[] segments;
+    private long nextSeq;
+
+    private PatientSeries(Path dir, int segmentCapacity, Segment[] segments, long nextSeq) {
+        this.dir = dir;
+        this.segmentCapacity = segmentCapacity;
+        this.segments = segments;
+        this.nextSeq = nextSeq;
+    }
+
+    static PatientSeries open(Path dir, int segmentCapacity) throws IOException {
+        Files.createDirectories(dir);
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        files.sort(null);
+        List<Segment> segments = new ArrayList<>(files.size());
+        long nextSeq = 0;
+        for (Path file : files) {
+            nextSeq = Math.max(nextSeq, seqOf(file) + 1);
+            try {
+                segments.add(Segment.open(file));
+            } catch (IOException e) {
+                log.warn("Skipping unreadable glucose segment {}", file, e);
+            }
+        }
+        return new PatientSeries(dir, segmentCapacity, segments.toArray(new Segment[0]), nextSeq);
+    }
+
+    synchronized void append(long t, double mmol) {
+        Segment[] current = segments;
+        Segment last = current.length == 0 ? null : current[current.length - 1];
+        if (last != null && last.append(t, mmol)) return;
+        if (last != null) last.force();
+        Segment next = newSegment();
+        next.append(t, mmol);
+        Segment[] grown = Arrays.copyOf(current, current.length + 1);
+        grown[current.length] = next;
+        segments = grown;
+    }
+
+    int scan(long from, long to, int limit, GlucoseStore.ReadingConsumer consumer) {
+        int seen = 0;
+        for (Segment segment : segments) {
+            if (seen == limit) break;
+            seen += segment.scan(from, to, limit - seen, consumer);
+        }
+        return seen;
+    }
+
+    long count() {
+        long count = 0;
+        for (Segment segment : segments) count += segment.count();
+        return count;
+    }
+
+    /** Newest timestamp stored, or {@code Long.MIN_VALUE} when empty. */
+    long newest() {
+        long newest = Long.MIN_VALUE;
+        for (Segment segment : segments) {
+            if (segment.count() > 0) newest = Math.max(newest, segment.maxT());
+        }
+        return newest;
+    }
+
+    synchronized void force() {
+        for (Segment segment : segments) segment.force();
+    }
+
+    /**
+     * Drops sealed segments entirely older than {@code before} and rewrites sealed segments that received
+     * readings out of order, sorted, so their scans go back to a binary search.
+     * The segment still being appended to is left alone.
+     * @return segments dropped or rewritten
+     */
+    synchronized int compact(long before) throws IOException {
+        Segment[] current = segments;
+        List<Segment> kept = new ArrayList<>(current.length);
+        List<Segment> dropped = new ArrayList<>();
+        int rewritten = 0;
+        for (int i = 0; i < current.length; i++) {
+            Segment segment = current[i];
+            boolean sealed = i < current.length - 1;
+            if (sealed && segment.maxT() < before) {
+                dropped.add(segment);
+            } else if (sealed && !segment.isSorted()) {
+                kept.add(sorted(segment));
+                rewritten++;
+            } else {
+                kept.add(segment);
+            }
+        }
+        if (dropped.isEmpty() && rewritten == 0) return 0;
+        segments = kept.toArray(new Segment[0]);
+        // Scans still running on a dropped segment keep its mapping, deleting the file does not unmap it
+        for (Segment segment : dropped) Files.deleteIfExists(segment.file);
+        return dropped.size() + rewritten;
+    }
+
+    // Written under a temporary name, then moved over the original, which keeps its place in the series
+    private Segment sorted(Segment segment) throws IOException {
+        int n = segment.count();
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, Comparator.comparingLong(segment::t));
+
+        Path tmp = dir.resolve(segment.file.getFileName() + ".tmp");
+        Files.deleteIfExists(tmp);
+        Segment copy = Segment.create(tmp, Math.max(n, 1));
+        for (int i : order) copy.append(segment.t(i), segment.mmol(i));
+        copy.force();
+        Files.move(tmp, segment.file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return Segment.open(segment.file);
+    }
+
+    private Segment newSegment() {
+        try {
+            return Segment.create(dir.resolve(name(nextSeq++)), segmentCapacity);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create glucose segment in " + dir, e);
+        }
+    }
+
+    private static String name(long seq) {
+        return String.format("%016d%s", seq, SUFFIX);
+    }
+
+    private static long seqOf(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
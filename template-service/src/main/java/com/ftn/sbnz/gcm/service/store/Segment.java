@@ -0,0 +1,181 @@
+package com.ftn.sbnz.gcm.service.store;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * One memory-mapped file of fixed-width readings, {@code [long t][double mmol]}, behind a 64 byte header:
+ * <pre>
+ * int magic, int version, int capacity, int count, long minT, long maxT, byte sorted
+ * </pre>
+ * The header is rewritten in place on every append, so a reopened segment knows how far it was filled.
+ * Every {@value #STRIDE}th timestamp is kept in a sparse in-memory index, a range scan of a sorted segment
+ * binary searches it and then reads at most one stride before it reaches the range.
+ * <p>
+ * One writer at a time, any number of readers: a reading becomes visible to readers when count is published.
+ */
+final class Segment {
+
+    static final int MAGIC = 0x47434d53; // GCMS
+    static final int VERSION = 1;
+    static final int HEADER = 64;
+    static final int RECORD = 16;
+    static final int STRIDE = 64;
+
+    private static final int COUNT_AT = 12;
+    private static final int MIN_T_AT = 16;
+    private static final int MAX_T_AT = 24;
+    private static final int SORTED_AT = 32;
+
+    final Path file;
+    final int capacity;
+    private final MappedByteBuffer buffer;
+    private final long[] sparse;
+
+    private volatile int count;
+    private volatile long minT = Long.MAX_VALUE;
+    private volatile long maxT = Long.MIN_VALUE;
+    private volatile boolean sorted = true;
+
+    private Segment(Path file, int capacity, MappedByteBuffer buffer) {
+        this.file = file;
+        this.capacity = capacity;
+        this.buffer = buffer;
+        this.sparse = new long[capacity / STRIDE + 1];
+    }
+
+    static Segment create(Path file, int capacity) throws IOException {
+        Segment segment = new Segment(file, capacity, map(file, HEADER + (long) capacity * RECORD));
+        segment.buffer.putInt(0, MAGIC);
+        segment.buffer.putInt(4, VERSION);
+        segment.buffer.putInt(8, capacity);
+        segment.writeHeader();
+        return segment;
+    }
+
+    static Segment open(Path file) throws IOException {
+        if (Files.size(file) < HEADER) throw new IOException("Truncated glucose segment: " + file);
+        MappedByteBuffer header = map(file, HEADER);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION)
+            throw new IOException("Not a glucose segment: " + file);
+        int capacity = header.getInt(8);
+        Segment segment = new Segment(file, capacity, map(file, HEADER + (long) capacity * RECORD));
+        int count = Math.min(segment.buffer.getInt(COUNT_AT), capacity);
+        for (int i = 0; i < count; i += STRIDE) {
+            segment.sparse[i / STRIDE] = segment.t(i);
+        }
+        segment.minT = segment.buffer.getLong(MIN_T_AT);
+        segment.maxT = segment.buffer.getLong(MAX_T_AT);
+        segment.sorted = segment.buffer.get(SORTED_AT) != 0;
+        segment.count = count;
+        return segment;
+    }
+
+    /** @return false if the segment is full */
+    boolean append(long t, double mmol) {
+        int n = count;
+        if (n == capacity) return false;
+        int at = HEADER + n * RECORD;
+        buffer.putLong(at, t);
+        buffer.putDouble(at + 8, mmol);
+        if (n % STRIDE == 0) sparse[n / STRIDE] = t;
+        if (n > 0 && t < maxT) sorted = false;
+        if (t < minT) minT = t;
+        if (t > maxT) maxT = t;
+        count = n + 1;
+        writeHeader();
+        return true;
+    }
+
+    /**
+     * Calls the consumer with the readings in [from, to], in storage order, straight from the mapping,
+     * and stops after {@code limit} of them.
+     * @return number of readings handed to the consumer
+     */
+    int scan(long from, long to, int limit, GlucoseStore.ReadingConsumer consumer) {
+        int n = count;
+        if (n == 0 || to < minT || from > maxT || limit <= 0) return 0;
+        int seen = 0;
+        if (!sorted) {
+            for (int i = 0; i < n && seen < limit; i++) {
+                long t = t(i);
+                if (t >= from && t <= to) {
+                    consumer.accept(t, mmol(i));
+                    seen++;
+                }
+            }
+            return seen;
+        }
+        for (int i = firstAtLeast(from, n); i < n && seen < limit; i++) {
+            long t = t(i);
+            if (t > to) break;
+            consumer.accept(t, mmol(i));
+            seen++;
+        }
+        return seen;
+    }
+
+    int count() {
+        return count;
+    }
+
+    boolean isFull() {
+        return count == capacity;
+    }
+
+    boolean isSorted() {
+        return sorted;
+    }
+
+    long minT() {
+        return minT;
+    }
+
+    long maxT() {
+        return maxT;
+    }
+
+    long t(int i) {
+        return buffer.getLong(HEADER + i * RECORD);
+    }
+
+    double mmol(int i) {
+        return buffer.getDouble(HEADER + i * RECORD + 8);
+    }
+
+    /** Writes dirty pages to disk. */
+    void force() {
+        buffer.force();
+    }
+
+    private int firstAtLeast(long from, int n) {
+        // Last stride starting before 'from', the first match is in it or right after it
+        int strides = (n + STRIDE - 1) / STRIDE;
+        int block = Arrays.binarySearch(sparse, 0, strides, from);
+        if (block < 0) block = -block - 2;
+        // Equal timestamps may span stride boundaries, step back over them
+        while (block > 0 && sparse[block] >= from) block--;
+        int i = Math.max(block, 0) * STRIDE;
+        while (i < n && t(i) < from) i++;
+        return i;
+    }
+
+    private void writeHeader() {
+        buffer.putInt(COUNT_AT, count);
+        buffer.putLong(MIN_T_AT, minT);
+        buffer.putLong(MAX_T_AT, maxT);
+        buffer.put(SORTED_AT, (byte) (sorted ? 1 : 0));
+    }
+
+    private static MappedByteBuffer map(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+}
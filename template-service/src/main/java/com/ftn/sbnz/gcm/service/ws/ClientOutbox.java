@@ -0,0 +1,136 @@
+package com.ftn.sbnz.gcm.service.ws;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded outbound queue of one WebSocket client, drained by at most one {@code ws-send} thread at a time,
+ * so frames keep their order and the session is never written concurrently.
+ * A client that stalls on a write or falls too far behind is closed, and what it had queued is dropped.
+ */
+@Slf4j
+final class ClientOutbox {
+
+    @Getter private final WebSocketSession session;
+    private final WsOutbound outbound;
+    private final WsOutbound.Meters meters;
+
+    private final Queue<Pending> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    // System.nanoTime() when the current write started, 0 while idle
+    private volatile long writingSince;
+
+    ClientOutbox(WebSocketSession session, WsOutbound outbound, WsOutbound.Meters meters) {
+        this.session = session;
+        this.outbound = outbound;
+        this.meters = meters;
+    }
+
+    /** Never blocks. */
+    void offer(WebSocketMessage<?> message) {
+        if (closed.get()) {
+            meters.dropped.increment();
+            return;
+        }
+        long now = System.nanoTime();
+        long since = writingSince;
+        if (since != 0 && now - since > outbound.getSendTimeLimit().toNanos()) {
+            drop("a write took longer than " + outbound.getSendTimeLimit().toMillis() + " ms");
+            return;
+        }
+        if (queuedBytes.addAndGet(message.getPayloadLength()) > outbound.getBufferSizeLimit()) {
+            drop("more than " + outbound.getBufferSizeLimit() + " bytes behind");
+            return;
+        }
+        queued.incrementAndGet();
+        queue.add(new Pending(message, now));
+        scheduleDrain();
+    }
+
+    int depth() {
+        return queued.get();
+    }
+
+    /** Forgets what is queued, for a client that is already gone. */
+    void discard() {
+        if (closed.compareAndSet(false, true)) clear();
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) outbound.getExecutor().execute(this::drain);
+    }
+
+    private void drain() {
+        try {
+            Pending pending;
+            while (!closed.get() && (pending = queue.poll()) != null) {
+                queued.decrementAndGet();
+                writingSince = System.nanoTime();
+                session.sendMessage(pending.message);
+                long done = System.nanoTime();
+                writingSince = 0;
+                queuedBytes.addAndGet(-pending.message.getPayloadLength());
+                meters.lag.record(done - pending.queuedAt, TimeUnit.NANOSECONDS);
+            }
+        } catch (IOException | RuntimeException e) {
+            writingSince = 0;
+            drop("write failed: " + e.getMessage());
+        } finally {
+            draining.set(false);
+        }
+        // An offer may have queued after the last poll but before the flag was cleared
+        if (!closed.get() && !queue.isEmpty()) scheduleDrain();
+    }
+
+    // The message at hand is lost too
+    private void drop(String reason) {
+        if (!closed.compareAndSet(false, true)) {
+            meters.dropped.increment();
+            return;
+        }
+        int lost = clear() + 1;
+        meters.dropped.increment(lost);
+        meters.slowClients.increment();
+        log.warn("Closing WebSocket {} of {}: {}, {} messages dropped", session.getId(), session.getUri(), reason, lost);
+        // Closing may block on a stuck socket as well, keep it off the broadcasting thread
+        outbound.getExecutor().execute(() -> {
+            try {
+                session.close(CloseStatus.SESSION_NOT_RELIABLE);
+            } catch (IOException | RuntimeException e) {
+                log.debug("Could not close WebSocket {}", session.getId(), e);
+            }
+        });
+    }
+
+    private int clear() {
+        int lost = 0;
+        while (queue.poll() != null) lost++;
+        queued.addAndGet(-lost);
+        queuedBytes.set(0);
+        return lost;
+    }
+
+    private static final class Pending {
+        final WebSocketMessage<?> message;
+        final long queuedAt;
+
+        Pending(WebSocketMessage<?> message, long queuedAt) {
+            this.message = message;
+            this.queuedAt = queuedAt;
+        }
+    }
+}
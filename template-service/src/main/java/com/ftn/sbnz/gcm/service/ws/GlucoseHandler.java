@@ -1,59 +1,56 @@
 package com.ftn.sbnz.gcm.service.ws;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ftn.sbnz.gcm.model.models.GlucoseMeasurement;
-import com.ftn.sbnz.gcm.service.service.RuleEngineSession;
+import com.ftn.sbnz.gcm.service.service.GlucoseHistory;
+import com.ftn.sbnz.gcm.service.service.RuleEngineSessionManager;
 import com.ftn.sbnz.gcm.service.service.SensorService;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.*;
-import org.springframework.web.socket.handler.TextWebSocketHandler;
 
-import javax.annotation.PostConstruct;
 import java.io.IOException;
 import java.util.List;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Live glucose readings. A new client first gets the recent history as one JSON array frame,
+ * then single GlucoseMessage frames.
+ */
+@Slf4j
 @Component
 @RequiredArgsConstructor
-public class GlucoseHandler extends TextWebSocketHandler {
-    private final ObjectMapper om = new ObjectMapper();
-    private final Set<WebSocketSession> sessions = ConcurrentHashMap.newKeySet();
+public class GlucoseHandler extends PatientBroadcastHandler {
     private final SensorService sensorService;
-    private final RuleEngineSession ruleEngineSession;
+    private final RuleEngineSessionManager sessionManager;
+    private final GlucoseHistory glucoseHistory;
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws IOException {
-        sessions.add(session);
+        super.afterConnectionEstablished(session);
 
-        fetchHistory(session);
+        String patientId = patientId(session);
+        if (glucoseHistory.isEmpty(patientId)) seedFromAgent(patientId);
+        // Through the client's outbox, so it never races a broadcast on the same socket
+        sendJsonTo(session, glucoseHistory.toJson(patientId));
     }
 
-    private void fetchHistory(WebSocketSession session) throws IOException {
-        ruleEngineSession.initSession();
-        List<GlucoseMessage> history = sensorService.fetchHistory(120);
-        for (GlucoseMessage msg : history) {
-            if (session != null)
-                session.sendMessage(new TextMessage(om.writeValueAsString(msg)));
-
-            ruleEngineSession.evaluateAndPublish(new GlucoseMeasurement(msg.getMmol(), msg.getT()), false);
+    /** Cold start: nothing received yet, ask the agent what it sent before the service was up. */
+    private void seedFromAgent(String patientId) {
+        List<GlucoseMessage> history;
+        try {
+            history = sensorService.fetchHistory(120);
+        } catch (RuntimeException e) {
+            log.warn("Could not fetch glucose history of patient {} from the agent", patientId, e);
+            return;
         }
-    }
-
-    @Override
-    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
-        sessions.remove(session);
-    }
-
-    // server doesn't expect inbound messages; ignore
-    @Override
-    protected void handleTextMessage(WebSocketSession session, TextMessage message) {}
-
-    public void send(Object payload) {
-        sessions.forEach(s -> {
-            try { s.sendMessage(new TextMessage(om.writeValueAsString(payload))); }
-            catch (Exception ignored) {}
+        glucoseHistory.recordAll(patientId, history);
+
+        // Only a session with nothing restored from its journal is seeded from the agent
+        sessionManager.execute(patientId, engine -> {
+            if (!engine.isCold()) return;
+            for (GlucoseMessage msg : history) {
+                engine.evaluateAndPublish(new GlucoseMeasurement(msg.getMmol(), msg.getT()), false);
+            }
         });
     }
 }
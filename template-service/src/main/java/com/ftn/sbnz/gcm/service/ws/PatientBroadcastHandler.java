@@ -0,0 +1,125 @@
+package com.ftn.sbnz.gcm.service.ws;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ftn.sbnz.gcm.service.service.RuleEngineSessionManager;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Groups connected clients by the {@code patientId} query parameter of the WebSocket URL
+ * and broadcasts to the clients of one patient.
+ * <p>
+ * A broadcast serializes its payload once and only queues the frame in each client's {@link ClientOutbox},
+ * so the caller, typically a rule shard inside fireAllRules, never waits for a socket.
+ */
+@Slf4j
+public abstract class PatientBroadcastHandler extends TextWebSocketHandler {
+    protected final ObjectMapper om = new ObjectMapper();
+    // Clients by patient, then by WebSocket session id
+    private final Map<String, Map<String, ClientOutbox>> clients = new ConcurrentHashMap<>();
+    private WsOutbound outbound;
+    private WsOutbound.Meters meters;
+
+    @Autowired
+    void setOutbound(WsOutbound outbound, MeterRegistry registry) {
+        this.outbound = outbound;
+        String endpoint = endpoint();
+        this.meters = outbound.meters(endpoint);
+        Gauge.builder("ws.clients", clients, m -> m.values().stream().mapToInt(Map::size).sum())
+                .tag("endpoint", endpoint)
+                .register(registry);
+        Gauge.builder("ws.send.backlog", clients, m -> m.values().stream()
+                        .flatMap(c -> c.values().stream()).mapToInt(ClientOutbox::depth).sum())
+                .description("Messages queued for clients, not yet written")
+                .tag("endpoint", endpoint)
+                .register(registry);
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws IOException {
+        clients.computeIfAbsent(patientId(session), k -> new ConcurrentHashMap<>())
+                .put(session.getId(), new ClientOutbox(session, outbound, meters));
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        Map<String, ClientOutbox> patientClients = clients.get(patientId(session));
+        if (patientClients == null) return;
+        ClientOutbox client = patientClients.remove(session.getId());
+        if (client != null) client.discard();
+    }
+
+    // server doesn't expect inbound messages; ignore
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) {}
+
+    /** Queues the payload for every client of the patient, serialized once for all of them. */
+    public void send(String patientId, Object payload) {
+        if (!hasClients(patientId)) return;
+        TextMessage message = serialize(payload);
+        if (message != null) broadcast(patientId, message);
+    }
+
+    /** Queues an already encoded frame for every client of the patient. */
+    protected void broadcast(String patientId, WebSocketMessage<?> message) {
+        Map<String, ClientOutbox> patientClients = clients.get(patientId);
+        if (patientClients != null) patientClients.values().forEach(client -> client.offer(message));
+    }
+
+    protected boolean hasClients(String patientId) {
+        Map<String, ClientOutbox> patientClients = clients.get(patientId);
+        return patientClients != null && !patientClients.isEmpty();
+    }
+
+    /** Queues the payload for one client only, behind what it already has queued. */
+    protected void sendTo(WebSocketSession session, Object payload) {
+        TextMessage message = serialize(payload);
+        if (message != null) sendFrameTo(session, message);
+    }
+
+    /** Like {@link #sendTo}, for a payload that is already JSON. */
+    protected void sendJsonTo(WebSocketSession session, String json) {
+        sendFrameTo(session, new TextMessage(json));
+    }
+
+    /** Queues an already encoded frame for one client only. */
+    protected void sendFrameTo(WebSocketSession session, WebSocketMessage<?> message) {
+        Map<String, ClientOutbox> patientClients = clients.get(patientId(session));
+        ClientOutbox client = patientClients == null ? null : patientClients.get(session.getId());
+        if (client != null) client.offer(message);
+    }
+
+    private TextMessage serialize(Object payload) {
+        try {
+            return new TextMessage(om.writeValueAsString(payload));
+        } catch (JsonProcessingException e) {
+            log.error("Could not serialize {} for {}", payload.getClass().getSimpleName(), endpoint(), e);
+            return null;
+        }
+    }
+
+    /** Tag of this handler's meters, e.g. "glucose" for GlucoseHandler. */
+    protected String endpoint() {
+        return getClass().getSimpleName().replace("Handler", "").toLowerCase();
+    }
+
+    public static String patientId(WebSocketSession session) {
+        if (session.getUri() == null) return RuleEngineSessionManager.DEFAULT_PATIENT;
+        String patientId = UriComponentsBuilder.fromUri(session.getUri()).build()
+                .getQueryParams().getFirst("patientId");
+        return patientId == null || patientId.isBlank() ? RuleEngineSessionManager.DEFAULT_PATIENT : patientId;
+    }
+}
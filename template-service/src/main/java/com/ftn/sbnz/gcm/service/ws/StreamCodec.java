@@ -0,0 +1,103 @@
+package com.ftn.sbnz.gcm.service.ws;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary frames of the {@value #PROTOCOL} WebSocket sub-protocol, see {@link StreamHandler}.
+ * Every frame starts with its type byte. Integers marked varint are unsigned LEB128,
+ * zigzag-encoded where they may be negative. mmol/L travel as int16 hundredths.
+ * <pre>
+ * GLUCOSE    1  varint zigzag(t - t of the previous reading of the stream), int16 mmol
+ * TREND      2  byte TrendType ordinal, byte strength
+ * SUGGESTION 3  varint at, varint UTF-8 length, UTF-8 text
+ * HISTORY    4  varint anchor, varint n, varint t[0], n-1 varint zigzag(t[i] - t[i-1]), n int16 mmol
+ * </pre>
+ * HISTORY is the first frame of a connection. Its anchor is the t the next GLUCOSE delta is relative to
+ * (0 if the stream has not sent a reading yet), which is not always the last reading of the history.
+ */
+public final class StreamCodec {
+
+    public static final String PROTOCOL = "gcm.v1.bin";
+
+    public static final byte GLUCOSE = 1;
+    public static final byte TREND = 2;
+    public static final byte SUGGESTION = 3;
+    public static final byte HISTORY = 4;
+
+    private StreamCodec() {}
+
+    public static byte[] glucose(long previousT, long t, double mmol) {
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 10 + 2);
+        buffer.put(GLUCOSE);
+        putVarLong(buffer, zigzag(t - previousT));
+        buffer.putShort(fixedPoint(mmol));
+        return toArray(buffer);
+    }
+
+    public static byte[] trend(int direction, int strength) {
+        return new byte[]{TREND, (byte) direction, (byte) strength};
+    }
+
+    public static byte[] suggestion(long at, String text) {
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 10 + 5 + utf8.length);
+        buffer.put(SUGGESTION);
+        putVarLong(buffer, at);
+        putVarLong(buffer, utf8.length);
+        buffer.put(utf8);
+        return toArray(buffer);
+    }
+
+    public static byte[] history(long anchor, long[] t, double[] mmol) {
+        int n = t.length;
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 10 + 5 + n * 10 + n * 2);
+        buffer.put(HISTORY);
+        putVarLong(buffer, anchor);
+        putVarLong(buffer, n);
+        for (int i = 0; i < n; i++) {
+            putVarLong(buffer, i == 0 ? t[0] : zigzag(t[i] - t[i - 1]));
+        }
+        for (int i = 0; i < n; i++) {
+            buffer.putShort(fixedPoint(mmol[i]));
+        }
+        return toArray(buffer);
+    }
+
+    /** Reads one varint, for decoders and tests. */
+    public static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) return value;
+        }
+    }
+
+    public static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7fL) != 0) {
+            buffer.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static short fixedPoint(double mmol) {
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(mmol * 100)));
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,81 @@
+package com.ftn.sbnz.gcm.service.ws;
+
+import com.ftn.sbnz.gcm.model.models.Trend;
+import com.ftn.sbnz.gcm.service.service.GlucoseHistory;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.SubProtocolCapable;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Glucose, trends and suggestions of a patient on one connection, as compact binary frames ({@link StreamCodec}).
+ * Opt-in: a client has to ask for the {@value StreamCodec#PROTOCOL} sub-protocol at handshake,
+ * anything else is closed right away.
+ * <p>
+ * Glucose frames carry the delta to the patient's previous reading, so they are the same bytes for every client.
+ * A new client is registered and sent its history under the same lock the readings are encoded under,
+ * so the history's anchor is exactly the reading the next delta refers to.
+ */
+@Component
+@RequiredArgsConstructor
+public class StreamHandler extends PatientBroadcastHandler implements SubProtocolCapable {
+
+    private final GlucoseHistory glucoseHistory;
+    private final Map<String, Anchor> anchors = new ConcurrentHashMap<>();
+
+    @Override
+    public List<String> getSubProtocols() {
+        return List.of(StreamCodec.PROTOCOL);
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws IOException {
+        if (!StreamCodec.PROTOCOL.equals(session.getAcceptedProtocol())) {
+            session.close(CloseStatus.PROTOCOL_ERROR.withReason("Sub-protocol " + StreamCodec.PROTOCOL + " required"));
+            return;
+        }
+        String patientId = patientId(session);
+        Anchor anchor = anchor(patientId);
+        synchronized (anchor) {
+            super.afterConnectionEstablished(session);
+            GlucoseHistory.Readings history = glucoseHistory.window(patientId, anchor.lastT == 0 ? Long.MAX_VALUE : anchor.lastT);
+            sendFrameTo(session, new BinaryMessage(StreamCodec.history(anchor.lastT, history.t, history.mmol)));
+        }
+    }
+
+    public void glucose(String patientId, long t, double mmol) {
+        Anchor anchor = anchor(patientId);
+        synchronized (anchor) {
+            // Kept up to date without clients too, a client connecting later is anchored on it
+            long previousT = anchor.lastT;
+            anchor.lastT = t;
+            if (hasClients(patientId))
+                broadcast(patientId, new BinaryMessage(StreamCodec.glucose(previousT, t, mmol)));
+        }
+    }
+
+    public void trend(String patientId, Trend trend) {
+        if (hasClients(patientId))
+            broadcast(patientId, new BinaryMessage(StreamCodec.trend(trend.getDirection().ordinal(), trend.getStrength())));
+    }
+
+    public void suggestion(String patientId, long at, String text) {
+        if (hasClients(patientId))
+            broadcast(patientId, new BinaryMessage(StreamCodec.suggestion(at, text)));
+    }
+
+    private Anchor anchor(String patientId) {
+        return anchors.computeIfAbsent(patientId, id -> new Anchor());
+    }
+
+    private static final class Anchor {
+        long lastT;
+    }
+}
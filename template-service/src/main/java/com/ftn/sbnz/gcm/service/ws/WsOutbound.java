@@ -0,0 +1,88 @@
+package com.ftn.sbnz.gcm.service.ws;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits and threads shared by the {@link ClientOutbox} of every WebSocket client.
+ * Frames are written by the {@code ws-send} threads, never by the thread that broadcasts.
+ */
+@Component
+@RequiredArgsConstructor
+public class WsOutbound {
+
+    private final MeterRegistry registry;
+
+    /** A client still writing one frame after this long is dropped on the next broadcast. */
+    @Getter
+    @Value("${ws.send-time-limit:5s}")
+    private Duration sendTimeLimit;
+
+    /** A client with more than this queued is dropped. */
+    @Value("${ws.buffer-size-limit:512KB}")
+    private DataSize bufferSizeLimit;
+
+    @Value("${ws.send-threads:4}")
+    private int sendThreads;
+
+    @Getter private ExecutorService executor;
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger n = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(sendThreads, r -> {
+            Thread t = new Thread(r, "ws-send-" + n.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    public long getBufferSizeLimit() {
+        return bufferSizeLimit.toBytes();
+    }
+
+    Meters meters(String endpoint) {
+        return new Meters(endpoint);
+    }
+
+    /** Meters of one endpoint, tagged with it. */
+    final class Meters {
+        final Timer lag;
+        final Counter dropped;
+        final Counter slowClients;
+
+        Meters(String endpoint) {
+            lag = Timer.builder("ws.send.lag")
+                    .description("Time from broadcast until the frame was written to the client")
+                    .tag("endpoint", endpoint)
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .register(registry);
+            dropped = Counter.builder("ws.dropped")
+                    .description("Messages never written because their client was too slow or gone")
+                    .tag("endpoint", endpoint)
+                    .register(registry);
+            slowClients = Counter.builder("ws.slow.clients")
+                    .description("Clients disconnected for exceeding the send time or buffer limit")
+                    .tag("endpoint", endpoint)
+                    .register(registry);
+        }
+    }
+}
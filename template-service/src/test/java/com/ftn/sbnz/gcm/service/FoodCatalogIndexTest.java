@@ -0,0 +1,74 @@
+package com.ftn.sbnz.gcm.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import com.ftn.sbnz.gcm.model.enums.GlycemicIndexType;
+import com.ftn.sbnz.gcm.model.models.Food;
+import com.ftn.sbnz.gcm.model.models.FoodConstraint;
+import com.ftn.sbnz.gcm.service.service.FoodCatalogIndex;
+
+/**
+ * The index against a brute-force scan of a small random catalog.
+ * Lookup times on large catalogs are measured by FoodCatalogBenchmark in gcm-benchmarks.
+ */
+public class FoodCatalogIndexTest {
+
+    private static final int CATALOG = 2_000;
+
+    @Test
+    public void findsSameFoodsAsFullScan() {
+        Random random = new Random(42);
+        List<Food> foods = new ArrayList<>();
+        for (int i = 0; i < CATALOG; i++) foods.add(randomFood(random));
+
+        FoodCatalogIndex index = new FoodCatalogIndex(null);
+        index.rebuild(foods.subList(0, CATALOG / 2));
+        for (Food food : foods.subList(CATALOG / 2, CATALOG)) index.add(food);
+        assertThat(index.size(), is(CATALOG));
+
+        for (int i = 0; i < 500; i++) {
+            double minCarbs = random.nextInt(60);
+            FoodConstraint constraint = new FoodConstraint(minCarbs, minCarbs + random.nextInt(20),
+                    random.nextInt(10), GlycemicIndexType.values()[random.nextInt(3)]);
+
+            List<Food> found = index.find(constraint, Integer.MAX_VALUE);
+            boolean any = !index.find(constraint, 1).isEmpty();
+
+            Set<Food> expected = new HashSet<>();
+            for (Food food : foods) if (matches(food, constraint)) expected.add(food);
+            assertThat(new HashSet<>(found), is(expected));
+            assertThat(any, is(!expected.isEmpty()));
+        }
+    }
+
+    @Test
+    public void skipsFoodsWithMissingValues() {
+        FoodCatalogIndex index = new FoodCatalogIndex(null);
+        index.add(new Food(UUID.randomUUID(), "water", null, 0.0, null));
+        assertThat(index.size(), is(0));
+        assertTrue(index.find(new FoodConstraint(0, 100, 100, GlycemicIndexType.LOW), 1).isEmpty());
+    }
+
+    private static boolean matches(Food food, FoodConstraint c) {
+        GlycemicIndexType t = c.getGlycemicIndexType();
+        return food.getCarbs() >= c.getMinCarbs() && food.getCarbs() <= c.getMaxCarbs()
+                && food.getFats() <= c.getMaxFats()
+                && food.getGlycemicIndex() >= t.getMinGi() && food.getGlycemicIndex() <= t.getMaxGi();
+    }
+
+    private static Food randomFood(Random random) {
+        return new Food(UUID.randomUUID(), "food",
+                (double) random.nextInt(80), random.nextInt(300) / 10.0, random.nextInt(110));
+    }
+}
@@ -0,0 +1,58 @@
+package com.ftn.sbnz.gcm.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.ftn.sbnz.gcm.model.enums.TrendType;
+import com.ftn.sbnz.gcm.model.models.GlucoseMeasurement;
+import com.ftn.sbnz.gcm.model.models.Suggestion;
+import com.ftn.sbnz.gcm.model.models.Trend;
+import com.ftn.sbnz.gcm.service.journal.InputLog;
+import com.ftn.sbnz.gcm.service.rules.KieBaseHolder;
+import com.ftn.sbnz.gcm.service.rules.RetentionPolicy;
+import com.ftn.sbnz.gcm.service.service.RuleEngineSession;
+import com.ftn.sbnz.gcm.service.service.RuleEventPublisher;
+
+/**
+ * A batch of readings collected offline, older than the trend window when it is uploaded.
+ */
+public class GlucoseBackfillTest {
+
+    private static final long STEP = Duration.ofMinutes(5).toMillis();
+
+    @Test
+    public void classifiesTheWindowAtTheNewestReading() {
+        AtomicLong now = new AtomicLong(Duration.ofHours(2).toMillis());
+        List<Trend> trends = new ArrayList<>();
+        RuleEventPublisher publisher = new RuleEventPublisher() {
+            @Override public void trend(String patientId, Trend trend) { trends.add(trend); }
+            @Override public void suggestion(String patientId, Suggestion suggestion) {}
+        };
+        RetentionPolicy retention = new RetentionPolicy(Duration.ofHours(6), Duration.ofHours(24), Duration.ofHours(24), Duration.ofHours(24));
+        RuleEngineSession session = new RuleEngineSession("backfill", KieBaseHolder.of(KieBaseHolder.compileTemplates()),
+                now::get, publisher, retention, (constraint, limit) -> Collections.emptyList(), InputLog.NONE);
+        session.initSession();
+
+        // An hour before the upload
+        long start = Duration.ofHours(1).toMillis();
+        List<GlucoseMeasurement> readings = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            readings.add(new GlucoseMeasurement(6.0 + 1.5 * i, start + i * STEP));
+        }
+        session.insertMeasurements(readings);
+
+        assertFalse(trends.isEmpty());
+        assertThat(trends.get(trends.size() - 1).getDirection(), is(TrendType.UP));
+        assertThat(session.getSessionTime(), is(start + 3 * STEP));
+        session.dispose();
+    }
+}
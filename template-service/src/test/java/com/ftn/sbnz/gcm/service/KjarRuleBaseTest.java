@@ -0,0 +1,73 @@
+package com.ftn.sbnz.gcm.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.kie.api.KieBase;
+import org.kie.api.definition.KiePackage;
+import org.kie.api.definition.rule.Rule;
+
+import com.ftn.sbnz.gcm.model.enums.TrendType;
+import com.ftn.sbnz.gcm.model.models.GlucoseMeasurement;
+import com.ftn.sbnz.gcm.model.models.Suggestion;
+import com.ftn.sbnz.gcm.model.models.Trend;
+import com.ftn.sbnz.gcm.service.config.DroolsConfig;
+import com.ftn.sbnz.gcm.service.journal.InputLog;
+import com.ftn.sbnz.gcm.service.rules.KieBaseHolder;
+import com.ftn.sbnz.gcm.service.rules.RetentionPolicy;
+import com.ftn.sbnz.gcm.service.service.RuleEngineSession;
+import com.ftn.sbnz.gcm.service.service.RuleEventPublisher;
+
+/**
+ * The executable model built by gcm-kjar against the templates compiled at runtime ({@code rules.source=templates}).
+ * Load times are measured by RuleBaseBenchmark in gcm-benchmarks.
+ */
+public class KjarRuleBaseTest {
+
+    private final KieBase kjar = new DroolsConfig().kieContainer().getKieBase(KieBaseHolder.KBASE_NAME);
+
+    @Test
+    public void holdsTheSameRulesAsTheTemplates() {
+        assertThat(ruleNames(kjar), is(ruleNames(KieBaseHolder.compileTemplates())));
+    }
+
+    @Test
+    public void firesOnTheFirstReadings() {
+        AtomicLong now = new AtomicLong();
+        List<Trend> trends = new ArrayList<>();
+        RuleEventPublisher publisher = new RuleEventPublisher() {
+            @Override public void trend(String patientId, Trend trend) { trends.add(trend); }
+            @Override public void suggestion(String patientId, Suggestion suggestion) {}
+        };
+        RetentionPolicy retention = new RetentionPolicy(Duration.ofHours(6), Duration.ofHours(24), Duration.ofHours(24), Duration.ofHours(24));
+        RuleEngineSession session = new RuleEngineSession("kjar", KieBaseHolder.of(kjar), now::get, publisher,
+                retention, (constraint, limit) -> Collections.emptyList(), InputLog.NONE);
+        session.initSession();
+
+        for (int i = 0; i < 3; i++) {
+            long t = now.addAndGet(Duration.ofMinutes(5).toMillis());
+            session.evaluateAndPublish(new GlucoseMeasurement(7.0 + i, t), true);
+        }
+        assertFalse(trends.isEmpty());
+        assertThat(trends.get(trends.size() - 1).getDirection(), is(TrendType.UP));
+        session.dispose();
+    }
+
+    private static Set<String> ruleNames(KieBase kBase) {
+        Set<String> names = new TreeSet<>();
+        for (KiePackage pkg : kBase.getKiePackages()) {
+            for (Rule rule : pkg.getRules()) names.add(pkg.getName() + "." + rule.getName());
+        }
+        return names;
+    }
+}
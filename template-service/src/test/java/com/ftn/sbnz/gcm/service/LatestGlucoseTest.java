@@ -0,0 +1,97 @@
+package com.ftn.sbnz.gcm.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.kie.api.KieBase;
+import org.kie.api.KieBaseConfiguration;
+import org.kie.api.KieServices;
+import org.kie.api.conf.EventProcessingOption;
+import org.kie.api.io.ResourceType;
+import org.kie.internal.utils.KieHelper;
+
+import com.ftn.sbnz.gcm.model.models.GlucoseMeasurement;
+import com.ftn.sbnz.gcm.model.models.LatestGlucose;
+import com.ftn.sbnz.gcm.model.models.Suggestion;
+import com.ftn.sbnz.gcm.model.models.Trend;
+import com.ftn.sbnz.gcm.service.journal.InputLog;
+import com.ftn.sbnz.gcm.service.rules.KieBaseHolder;
+import com.ftn.sbnz.gcm.service.rules.RetentionPolicy;
+import com.ftn.sbnz.gcm.service.service.RuleEngineSession;
+import com.ftn.sbnz.gcm.service.service.RuleEventPublisher;
+
+/**
+ * The single LatestGlucose fact a session keeps follows the newest reading, also when readings arrive late.
+ * What it saves over the join it replaced is measured by LatestGlucoseBenchmark in gcm-benchmarks.
+ */
+public class LatestGlucoseTest {
+
+    // The globals RuleEngineSession sets, and a rule reporting the LatestGlucose fact on every change
+    private static final String DRL =
+            "import com.ftn.sbnz.gcm.model.models.LatestGlucose;\n" +
+            "global org.kie.api.runtime.Channel trend;\n" +
+            "global org.kie.api.runtime.Channel sugg;\n" +
+            "global com.ftn.sbnz.gcm.model.models.GlucoseTrendConfig config;\n" +
+            "global org.kie.api.time.SessionClock droolsClock;\n" +
+            "global com.ftn.sbnz.gcm.model.models.FoodCatalog foodCatalog;\n" +
+            "rule \"Report latest\" when\n" +
+            "    $latest: LatestGlucose()\n" +
+            "then sugg.send(new LatestGlucose($latest.getValue(), $latest.getTimestamp())); end\n";
+
+    private final List<LatestGlucose> reported = new ArrayList<>();
+    private long now;
+
+    @Test
+    public void tracksNewestReading() {
+        RuleEngineSession session = session();
+
+        read(session, 5.0, 1_000);
+        assertThat(last(), is(new LatestGlucose(5.0, 1_000)));
+        read(session, 8.0, 3_000);
+        assertThat(last(), is(new LatestGlucose(8.0, 3_000)));
+        // Late reading, older than the latest one
+        read(session, 12.0, 2_000);
+        assertThat(last(), is(new LatestGlucose(8.0, 3_000)));
+        read(session, 6.0, 4_000);
+        assertThat(last(), is(new LatestGlucose(6.0, 4_000)));
+
+        assertThat(session.factCount(LatestGlucose.class), is(1L));
+        assertThat(session.factCount(GlucoseMeasurement.class), is(4L));
+        session.dispose();
+    }
+
+    private void read(RuleEngineSession session, double value, long t) {
+        now = Math.max(now, t);
+        session.evaluateAndPublish(new GlucoseMeasurement(value, t), true);
+    }
+
+    private LatestGlucose last() {
+        return reported.get(reported.size() - 1);
+    }
+
+    private RuleEngineSession session() {
+        KieBaseConfiguration cfg = KieServices.Factory.get().newKieBaseConfiguration();
+        cfg.setOption(EventProcessingOption.STREAM);
+        KieBase kBase = new KieHelper().addContent(DRL, ResourceType.DRL).build(cfg);
+        RuleEventPublisher publisher = new RuleEventPublisher() {
+            @Override public void trend(String patientId, Trend trend) {}
+            @Override public void suggestion(String patientId, Suggestion suggestion) {}
+
+            @Override
+            public void publish(String patientId, List<Object> emissions) {
+                for (Object emission : emissions) reported.add((LatestGlucose) emission);
+            }
+        };
+        RetentionPolicy retention = new RetentionPolicy(Duration.ofHours(6), Duration.ofHours(24), Duration.ofHours(24), Duration.ofHours(24));
+        RuleEngineSession session = new RuleEngineSession("latest", KieBaseHolder.of(kBase), () -> now, publisher,
+                retention, (constraint, limit) -> Collections.emptyList(), InputLog.NONE);
+        session.initSession();
+        return session;
+    }
+}
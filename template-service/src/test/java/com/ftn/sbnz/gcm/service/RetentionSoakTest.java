@@ -0,0 +1,68 @@
+package com.ftn.sbnz.gcm.service;
+
+import static org.junit.Assert.assertThat;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.ftn.sbnz.gcm.model.enums.ActivityIntensity;
+import com.ftn.sbnz.gcm.model.models.ActivityEvent;
+import com.ftn.sbnz.gcm.model.models.GlucoseMeasurement;
+import com.ftn.sbnz.gcm.model.models.InsulinEvent;
+import com.ftn.sbnz.gcm.model.models.Suggestion;
+import com.ftn.sbnz.gcm.model.models.Trend;
+import com.ftn.sbnz.gcm.service.journal.InputLog;
+import com.ftn.sbnz.gcm.service.rules.KieBaseHolder;
+import com.ftn.sbnz.gcm.service.rules.RetentionPolicy;
+import com.ftn.sbnz.gcm.service.service.RuleEngineSession;
+import com.ftn.sbnz.gcm.service.service.RuleEventPublisher;
+
+/**
+ * Feeds three simulated days into one session, longer than any retention, and checks working memory
+ * stays bounded by the retention policy. How long a month takes is measured by RetentionSoakBenchmark in gcm-benchmarks.
+ */
+public class RetentionSoakTest {
+
+    private static final long READING_EVERY = Duration.ofMinutes(5).toMillis();
+    private static final long INSULIN_EVERY = Duration.ofHours(6).toMillis();
+    private static final long ACTIVITY_EVERY = Duration.ofHours(12).toMillis();
+
+    @Test
+    public void workingMemoryStaysBounded() {
+        Duration glucose = Duration.ofHours(6), insulin = Duration.ofHours(24), activity = Duration.ofHours(24);
+        RetentionPolicy policy = new RetentionPolicy(glucose, insulin, activity, Duration.ofHours(24));
+        AtomicLong now = new AtomicLong(0);
+        RuleEventPublisher publisher = new RuleEventPublisher() {
+            @Override public void trend(String patientId, Trend trend) {}
+            @Override public void suggestion(String patientId, Suggestion suggestion) {}
+        };
+
+        RuleEngineSession session = new RuleEngineSession("soak",
+                KieBaseHolder.of(KieBaseHolder.compileTemplates()), now::get, publisher, policy, (constraint, limit) -> Collections.emptyList(), InputLog.NONE);
+        session.initSession();
+
+        long end = Duration.ofDays(3).toMillis();
+        for (long t = 0; t <= end; t += READING_EVERY) {
+            now.set(t);
+            session.insertMeasurements(Collections.singletonList(new GlucoseMeasurement(reading(t), t)));
+            if (t % INSULIN_EVERY == 0)
+                session.insertEvent(new InsulinEvent(UUID.randomUUID(), t, 4));
+            if (t % ACTIVITY_EVERY == 0)
+                session.insertEvent(new ActivityEvent(UUID.randomUUID(), t + READING_EVERY, 30, ActivityIntensity.LOW));
+        }
+
+        assertThat(session.factCount(GlucoseMeasurement.class), lessThanOrEqualTo(glucose.toMillis() / READING_EVERY + 1));
+        assertThat(session.factCount(InsulinEvent.class), lessThanOrEqualTo(insulin.toMillis() / INSULIN_EVERY + 1));
+        assertThat(session.factCount(ActivityEvent.class), lessThanOrEqualTo(activity.toMillis() / ACTIVITY_EVERY + 1));
+        session.dispose();
+    }
+
+    private static double reading(long t) {
+        return 8 + 5 * Math.sin(t / (double) Duration.ofHours(3).toMillis());
+    }
+}
@@ -0,0 +1,135 @@
+package com.ftn.sbnz.gcm.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.ftn.sbnz.gcm.model.enums.TrendType;
+import com.ftn.sbnz.gcm.model.models.GlucoseMeasurement;
+import com.ftn.sbnz.gcm.model.models.GlucoseTrendConfig;
+import com.ftn.sbnz.gcm.model.models.Suggestion;
+import com.ftn.sbnz.gcm.model.models.Trend;
+import com.ftn.sbnz.gcm.model.rules.RuleTemplate;
+import com.ftn.sbnz.gcm.service.config.DroolsConfig;
+import com.ftn.sbnz.gcm.service.dto.RuleReloadDto;
+import com.ftn.sbnz.gcm.service.journal.SessionJournal;
+import com.ftn.sbnz.gcm.service.rules.KieBaseHolder;
+import com.ftn.sbnz.gcm.service.rules.RetentionPolicy;
+import com.ftn.sbnz.gcm.service.rules.RuleMetrics;
+import com.ftn.sbnz.gcm.service.rules.RuleReloader;
+import com.ftn.sbnz.gcm.service.rules.TrendStabilizer;
+import com.ftn.sbnz.gcm.service.service.ClockService;
+import com.ftn.sbnz.gcm.service.service.FoodCatalogIndex;
+import com.ftn.sbnz.gcm.service.service.RuleEngineSessionManager;
+import com.ftn.sbnz.gcm.service.service.RuleEventPublisher;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Reloads the trend-classify table into the KieBase of the kjar while a patient session is live,
+ * the way the running service does it.
+ */
+public class RuleReloadIntegrationTest {
+
+    private static final String PATIENT = "reload";
+    private static final long STEP = Duration.ofMinutes(5).toMillis();
+
+    private final AtomicLong now = new AtomicLong(0);
+    private final List<Trend> trends = new CopyOnWriteArrayList<>();
+    private RuleEngineSessionManager manager;
+    private RuleReloader reloader;
+
+    @Before
+    public void setUp() {
+        KieBaseHolder holder = KieBaseHolder.of(new DroolsConfig().kieContainer().getKieBase(KieBaseHolder.KBASE_NAME));
+        ClockService clock = new ClockService() {
+            @Override public long now() { return now.get(); }
+        };
+        RuleEventPublisher publisher = new RuleEventPublisher() {
+            @Override public void trend(String patientId, Trend trend) { trends.add(trend); }
+            @Override public void suggestion(String patientId, Suggestion suggestion) {}
+        };
+        FoodCatalogIndex catalog = new FoodCatalogIndex(null);
+        catalog.rebuild(Collections.emptyList());
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        RetentionPolicy retention = new RetentionPolicy(Duration.ofHours(6), Duration.ofHours(24), Duration.ofHours(24), Duration.ofHours(24));
+
+        // Outside Spring the journal is off, the session lives in memory only
+        manager = new RuleEngineSessionManager(holder, clock, publisher, retention, catalog, registry,
+                new SessionJournal(), new RuleMetrics(registry), new TrendStabilizer(0.1, Duration.ofMinutes(5)));
+        ReflectionTestUtils.setField(manager, "shardCount", 2);
+        manager.start();
+
+        reloader = new RuleReloader(holder, manager);
+        ReflectionTestUtils.setField(reloader, "reloadDir", "");
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        manager.stop();
+    }
+
+    @Test
+    public void reloadedRulesFireInLiveSessions() {
+        read(5, 7, 9);
+        assertThat(last().getDirection(), is(TrendType.UP));
+        assertThat(last().getStrength(), is(2));
+        int published = trends.size();
+
+        // Same table: nothing changed, and the trend the swap re-inserts is the one already published
+        RuleReloadDto same = reloader.reload(RuleTemplate.TREND_CLASSIFY, null);
+        assertThat(same.getUpdated(), is(empty()));
+        assertThat(same.getAdded(), is(empty()));
+        assertThat(same.getRemoved(), is(empty()));
+        assertThat(same.getKept(), hasSize(5));
+        read(11);
+        assertThat(trends, hasSize(published));
+
+        // The shipped table classifies this fall as DOWN 2, the reloaded one as DOWN 1
+        RuleReloadDto changed = reloader.reload(RuleTemplate.TREND_CLASSIFY, table(
+                "DOWN fast|netDelta < config.strongDownThreshold|DOWN|1"));
+        assertThat(changed.getUpdated(), contains("Trend DOWN fast"));
+        assertThat(changed.getKept(), hasSize(4));
+        read(8, 5, 2);
+        assertThat(last().getDirection(), is(TrendType.DOWN));
+        assertThat(last().getStrength(), is(1));
+        assertThat(last().getDelta() < new GlucoseTrendConfig().strongDownThreshold, is(true));
+    }
+
+    private void read(double... values) {
+        for (double value : values) {
+            long t = now.addAndGet(STEP);
+            GlucoseMeasurement gm = new GlucoseMeasurement(value, t);
+            manager.execute(PATIENT, s -> s.evaluateAndPublish(gm, true)).join();
+        }
+    }
+
+    private Trend last() {
+        return trends.get(trends.size() - 1);
+    }
+
+    private static byte[] table(String downFast) {
+        return String.join("\n",
+                "name|condition|trendType|strength",
+                "UP fast|netDelta > config.strongUpThreshold|UP|2",
+                "UP slow|netDelta > config.slightUpThreshold, netDelta <= config.strongUpThreshold|UP|1",
+                "STABLE|netDelta >= config.slightDownThreshold, netDelta <= config.slightUpThreshold|STABLE|1",
+                downFast,
+                "DOWN slow|netDelta < config.slightDownThreshold, netDelta >= config.strongDownThreshold|DOWN|1")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+}
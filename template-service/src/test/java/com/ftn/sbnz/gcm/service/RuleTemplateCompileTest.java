@@ -0,0 +1,80 @@
+package com.ftn.sbnz.gcm.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.kie.api.KieBase;
+import org.kie.api.io.ResourceType;
+import org.kie.internal.builder.KnowledgeBuilder;
+import org.kie.internal.builder.KnowledgeBuilderFactory;
+import org.kie.internal.io.ResourceFactory;
+
+import com.ftn.sbnz.gcm.model.enums.TrendType;
+import com.ftn.sbnz.gcm.model.models.GlucoseMeasurement;
+import com.ftn.sbnz.gcm.model.models.Suggestion;
+import com.ftn.sbnz.gcm.model.models.Trend;
+import com.ftn.sbnz.gcm.model.rules.RuleTemplate;
+import com.ftn.sbnz.gcm.model.rules.RuleTemplateExpander;
+import com.ftn.sbnz.gcm.service.journal.InputLog;
+import com.ftn.sbnz.gcm.service.rules.KieBaseHolder;
+import com.ftn.sbnz.gcm.service.rules.RetentionPolicy;
+import com.ftn.sbnz.gcm.service.service.RuleEngineSession;
+import com.ftn.sbnz.gcm.service.service.RuleEventPublisher;
+
+/**
+ * Compiles the expanded templates the way the kjar build, {@code rules.source=templates} and reloads do,
+ * so a template that stops compiling fails here instead of at startup.
+ */
+public class RuleTemplateCompileTest {
+
+    @Test
+    public void everyTemplateCompilesOnItsOwn() {
+        // A reload compiles one template package alone, it sees no imports or globals of basic.drl
+        RuleTemplateExpander expander = RuleTemplateExpander.fromClasspath();
+        for (RuleTemplate template : RuleTemplate.values()) {
+            KnowledgeBuilder builder = KnowledgeBuilderFactory.newKnowledgeBuilder();
+            byte[] drl = expander.expand(template).getBytes(StandardCharsets.UTF_8);
+            builder.add(ResourceFactory.newByteArrayResource(drl), ResourceType.DRL);
+            assertFalse(template + " does not compile: " + builder.getErrors(), builder.hasErrors());
+        }
+    }
+
+    @Test
+    public void templatesCompileWithTheBaseRules() {
+        KieBase kBase = KieBaseHolder.compileTemplates();
+        assertTrue(kBase.getKiePackages().stream().anyMatch(p -> p.getName().endsWith(".trendclassify") && !p.getRules().isEmpty()));
+    }
+
+    @Test
+    public void risingSeriesEmitsATrend() {
+        // Every column of the table has to reach the expanded rule, an empty one drops the insertLogical
+        AtomicLong now = new AtomicLong();
+        List<Trend> trends = new ArrayList<>();
+        RuleEventPublisher publisher = new RuleEventPublisher() {
+            @Override public void trend(String patientId, Trend trend) { trends.add(trend); }
+            @Override public void suggestion(String patientId, Suggestion suggestion) {}
+        };
+        RetentionPolicy retention = new RetentionPolicy(Duration.ofHours(6), Duration.ofHours(24), Duration.ofHours(24), Duration.ofHours(24));
+        RuleEngineSession session = new RuleEngineSession("rising", KieBaseHolder.of(KieBaseHolder.compileTemplates()), now::get,
+                publisher, retention, (constraint, limit) -> Collections.emptyList(), InputLog.NONE);
+        session.initSession();
+
+        for (int i = 0; i < 4; i++) {
+            long t = now.addAndGet(Duration.ofMinutes(5).toMillis());
+            session.evaluateAndPublish(new GlucoseMeasurement(6.0 + 1.5 * i, t), true);
+        }
+        assertFalse(trends.isEmpty());
+        assertThat(trends.get(trends.size() - 1).getDirection(), is(TrendType.UP));
+        session.dispose();
+    }
+}
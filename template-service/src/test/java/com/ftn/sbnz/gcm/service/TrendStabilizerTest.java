@@ -0,0 +1,56 @@
+package com.ftn.sbnz.gcm.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.time.Duration;
+
+import org.junit.Test;
+
+import com.ftn.sbnz.gcm.model.enums.TrendType;
+import com.ftn.sbnz.gcm.model.models.GlucoseTrendConfig;
+import com.ftn.sbnz.gcm.model.models.Trend;
+import com.ftn.sbnz.gcm.service.rules.TrendStabilizer;
+import com.ftn.sbnz.gcm.service.rules.TrendStabilizer.Verdict;
+
+public class TrendStabilizerTest {
+
+    private static final long MINUTE = 60_000;
+
+    private final GlucoseTrendConfig config = new GlucoseTrendConfig();
+    private final TrendStabilizer.Gate gate = new TrendStabilizer(0.1, Duration.ofMinutes(5)).forSession();
+
+    @Test
+    public void publishesOnlyChanges() {
+        assertThat(gate.check(new Trend(TrendType.STABLE, 1, 0.0), config, 0), is(Verdict.PUBLISH));
+        assertThat(gate.check(new Trend(TrendType.STABLE, 1, 0.05), config, MINUTE), is(Verdict.DUPLICATE));
+        assertThat(gate.check(new Trend(TrendType.UP, 1, 0.6), config, 6 * MINUTE), is(Verdict.PUBLISH));
+    }
+
+    @Test
+    public void holdsTrendForMinimumDwell() {
+        gate.check(new Trend(TrendType.STABLE, 1, 0.0), config, 0);
+        assertThat(gate.check(new Trend(TrendType.UP, 1, 0.6), config, 4 * MINUTE), is(Verdict.DWELL));
+        assertThat(gate.check(new Trend(TrendType.UP, 1, 0.6), config, 5 * MINUTE), is(Verdict.PUBLISH));
+    }
+
+    @Test
+    public void ignoresDeltasHoveringAroundThreshold() {
+        gate.check(new Trend(TrendType.STABLE, 1, 0.2), config, 0);
+        // Just over slightUpThreshold (0.3), not by the band
+        assertThat(gate.check(new Trend(TrendType.UP, 1, 0.35), config, 10 * MINUTE), is(Verdict.HYSTERESIS));
+        assertThat(gate.check(new Trend(TrendType.UP, 1, 0.45), config, 11 * MINUTE), is(Verdict.PUBLISH));
+        // And back: below 0.3 but not below 0.2
+        assertThat(gate.check(new Trend(TrendType.STABLE, 1, 0.25), config, 20 * MINUTE), is(Verdict.HYSTERESIS));
+        assertThat(gate.check(new Trend(TrendType.STABLE, 1, 0.15), config, 21 * MINUTE), is(Verdict.PUBLISH));
+    }
+
+    @Test
+    public void deltaIsNotPartOfTrendEquality() {
+        // insertLogical relies on it, a new delta must not add a second Trend of the same arrow
+        Trend a = new Trend(TrendType.UP, 1, 0.4);
+        Trend b = new Trend(TrendType.UP, 1, 0.7);
+        assertThat(a.equals(b), is(true));
+        assertThat(a.hashCode(), is(b.hashCode()));
+    }
+}
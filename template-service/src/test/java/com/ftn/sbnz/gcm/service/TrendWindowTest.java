@@ -0,0 +1,64 @@
+package com.ftn.sbnz.gcm.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.closeTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.ftn.sbnz.gcm.model.accumulate.TrendWindow;
+import com.ftn.sbnz.gcm.model.models.GlucoseMeasurement;
+
+/**
+ * Checks the incremental window against the full rescan it replaced in basic.drl.
+ */
+public class TrendWindowTest {
+
+    @Test
+    public void matchesFullRescanWhileSliding() {
+        Random random = new Random(42);
+        TrendWindow window = new TrendWindow();
+        List<GlucoseMeasurement> samples = new ArrayList<>();
+
+        for (int i = 0; i < 20_000; i++) {
+            int op = random.nextInt(10);
+            if (op < 5 || samples.isEmpty()) {
+                GlucoseMeasurement gm = new GlucoseMeasurement(4 + random.nextInt(100) / 10.0, i);
+                samples.add(gm);
+                window.add(gm, gm.getValue());
+            } else if (op < 9) {
+                window.remove(samples.remove(0));
+            } else {
+                window.remove(samples.remove(random.nextInt(samples.size())));
+            }
+
+            assertThat(window.size(), is(samples.size()));
+            assertThat(window.maxDelta(), closeTo(calculateMaxDelta(samples), 1e-9));
+            assertThat(window.weightedDelta(), closeTo(getWeightedDelta(samples), 1e-9));
+        }
+    }
+
+    private static double calculateMaxDelta(List<GlucoseMeasurement> samples) {
+        double maxDelta = 0.0;
+        for (int i = 0; i < samples.size() - 1; i++) {
+            double delta = Math.abs(samples.get(i + 1).getValue() - samples.get(i).getValue());
+            if (delta > maxDelta) {
+                maxDelta = delta;
+            }
+        }
+        return maxDelta;
+    }
+
+    private static double getWeightedDelta(List<GlucoseMeasurement> samples) {
+        if (samples.size() < 2) return 0.0;
+        double first = samples.get(0).getValue();
+        double last = samples.get(samples.size() - 1).getValue();
+        int recentCount = Math.min(3, samples.size());
+        double recentFirst = samples.get(samples.size() - recentCount).getValue();
+        return 0.6 * (last - recentFirst) + 0.4 * (last - first);
+    }
+}
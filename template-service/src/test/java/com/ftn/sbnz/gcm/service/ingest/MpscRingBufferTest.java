@@ -0,0 +1,65 @@
+package com.ftn.sbnz.gcm.service.ingest;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class MpscRingBufferTest {
+
+    @Test
+    public void rejectsWhenFullAndAcceptsAfterPoll() {
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(4);
+
+        for (int i = 0; i < 4; i++) {
+            assertThat(buffer.offer(i), is(true));
+        }
+        assertThat(buffer.offer(4), is(false));
+        assertThat(buffer.size(), is(4));
+
+        assertThat(buffer.poll(), is(0));
+        assertThat(buffer.offer(4), is(true));
+
+        List<Integer> drained = new ArrayList<>();
+        assertThat(buffer.drain(drained::add, 10), is(4));
+        assertThat(drained, is(List.of(1, 2, 3, 4)));
+        assertThat(buffer.poll(), is(nullValue()));
+    }
+
+    @Test
+    public void keepsPerProducerOrderUnderContention() throws InterruptedException {
+        int producers = 4;
+        int perProducer = 100_000;
+        MpscRingBuffer<Long> buffer = new MpscRingBuffer<>(1024);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            long base = (long) p * perProducer;
+            Thread t = new Thread(() -> {
+                for (long i = 0; i < perProducer; i++) {
+                    while (!buffer.offer(base + i)) Thread.yield();
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+
+        long[] last = new long[producers];
+        java.util.Arrays.fill(last, -1);
+        long received = 0;
+        while (received < (long) producers * perProducer) {
+            Long v = buffer.poll();
+            if (v == null) continue;
+            int p = (int) (v / perProducer);
+            assertThat(v % perProducer, is(last[p] + 1));
+            last[p] = v % perProducer;
+            received++;
+        }
+        for (Thread t : threads) t.join();
+        assertThat(buffer.isEmpty(), is(true));
+    }
+}
@@ -0,0 +1,38 @@
+package com.ftn.sbnz.gcm.service.ingest;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.ftn.sbnz.gcm.model.models.GlucoseMeasurement;
+
+public class SessionInboxTest {
+
+    @Test
+    public void coalescedReadingKeepsItsPlace() {
+        SessionInbox inbox = new SessionInbox("test", 2);
+        assertThat(inbox.offer(reading(1)), is(true));
+        assertThat(inbox.offer(reading(2)), is(true));
+        assertThat(inbox.offer(reading(3)), is(false));
+        assertThat(inbox.coalesce(reading(3)), is(false));
+
+        // Room again, but the coalesced reading has to go first
+        List<Long> drained = new ArrayList<>();
+        inbox.drain(e -> drained.add(((GlucoseMeasurement) e.getFact()).getTimestamp()), 1);
+        assertThat(inbox.offer(reading(4)), is(false));
+        assertThat(inbox.coalesce(reading(4)), is(true));
+
+        inbox.drain(e -> drained.add(((GlucoseMeasurement) e.getFact()).getTimestamp()), 10);
+        assertThat(drained, is(List.of(1L, 2L, 4L)));
+        assertThat(inbox.offer(reading(5)), is(true));
+        assertThat(inbox.depth(), is(1));
+    }
+
+    private static IngestEvent reading(long t) {
+        return IngestEvent.of(new GlucoseMeasurement(5.0, t));
+    }
+}
@@ -0,0 +1,138 @@
+package com.ftn.sbnz.gcm.service.journal;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.ftn.sbnz.gcm.model.models.GlucoseMeasurement;
+import com.ftn.sbnz.gcm.model.models.InsulinEvent;
+
+public class PatientJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replaysLoggedBatchesInOrder() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        PatientJournal journal = open(dir);
+        assertFalse(journal.recover(in -> {}, batches -> {}));
+        journal.append(Arrays.asList(new GlucoseMeasurement(5.5, 1000), new GlucoseMeasurement(6.1, 2000)));
+        journal.append(Arrays.asList(new InsulinEvent(UUID.randomUUID(), 2500, 4)));
+        journal.close();
+
+        List<List<Object>> replayed = new ArrayList<>();
+        assertTrue(open(dir).recover(in -> {}, replayed::addAll));
+        assertThat(replayed.size(), is(2));
+        assertThat(replayed.get(0).get(1), is((Object) new GlucoseMeasurement(6.1, 2000)));
+        assertThat(((InsulinEvent) replayed.get(1).get(0)).getAmount(), is(4));
+    }
+
+    @Test
+    public void dropsTornTailAndKeepsAppending() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        PatientJournal journal = open(dir);
+        journal.recover(in -> {}, batches -> {});
+        journal.append(Arrays.asList(new GlucoseMeasurement(5.5, 1000)));
+        journal.close();
+        try (FileChannel wal = FileChannel.open(dir.resolve(PatientJournal.WAL), StandardOpenOption.APPEND)) {
+            wal.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 40, 1, 2}));
+        }
+
+        journal = open(dir);
+        List<List<Object>> replayed = new ArrayList<>();
+        journal.recover(in -> {}, replayed::addAll);
+        assertThat(replayed.size(), is(1));
+        journal.append(Arrays.asList(new GlucoseMeasurement(6.0, 2000)));
+        journal.close();
+
+        replayed.clear();
+        open(dir).recover(in -> {}, replayed::addAll);
+        assertThat(replayed.size(), is(2));
+    }
+
+    @Test
+    public void snapshotReplacesLog() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        PatientJournal journal = open(dir);
+        journal.recover(in -> {}, batches -> {});
+        journal.append(Arrays.asList(new GlucoseMeasurement(5.5, 1000)));
+        journal.snapshot(out -> out.write(42));
+        journal.append(Arrays.asList(new GlucoseMeasurement(6.0, 2000)));
+        journal.close();
+
+        int[] snapshot = new int[1];
+        List<List<Object>> replayed = new ArrayList<>();
+        open(dir).recover(in -> snapshot[0] = in.read(), replayed::addAll);
+        assertThat(snapshot[0], is(42));
+        assertThat(replayed.size(), is(1));
+        assertThat(replayed.get(0).get(0), is((Object) new GlucoseMeasurement(6.0, 2000)));
+    }
+
+    @Test
+    public void snapshotTruncatesLogWhenTheWriterClosesTheStream() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        PatientJournal journal = open(dir);
+        journal.recover(in -> {}, batches -> {});
+        journal.append(Arrays.asList(new GlucoseMeasurement(5.5, 1000)));
+        // Like an ObjectOutputStream the writer wraps it in would
+        journal.snapshot(out -> {
+            out.write(42);
+            out.close();
+        });
+        assertThat(Files.size(dir.resolve(PatientJournal.WAL)), is(0L));
+        journal.close();
+
+        int[] snapshot = new int[1];
+        List<List<Object>> replayed = new ArrayList<>();
+        open(dir).recover(in -> snapshot[0] = in.read(), replayed::addAll);
+        assertThat(snapshot[0], is(42));
+        assertThat(replayed.size(), is(0));
+    }
+
+    @Test
+    public void failedSnapshotIsRetriedOnlyAfterAnotherInterval() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        PatientJournal journal = new PatientJournal("test", dir, 2);
+        journal.recover(in -> {}, batches -> {});
+        journal.append(Arrays.asList(new GlucoseMeasurement(5.5, 1000), new GlucoseMeasurement(6.0, 2000)));
+        assertTrue(journal.isSnapshotDue());
+        try {
+            journal.snapshot(out -> { throw new IOException("disk full"); });
+            fail();
+        } catch (IOException expected) {
+        }
+        assertFalse(Files.exists(dir.resolve(PatientJournal.SNAPSHOT + ".tmp")));
+
+        journal.append(Arrays.asList(new GlucoseMeasurement(6.5, 3000)));
+        assertFalse(journal.isSnapshotDue());
+        journal.append(Arrays.asList(new GlucoseMeasurement(7.0, 4000)));
+        assertTrue(journal.isSnapshotDue());
+        journal.close();
+
+        List<List<Object>> replayed = new ArrayList<>();
+        open(dir).recover(in -> {}, replayed::addAll);
+        assertThat(replayed.size(), is(3));
+    }
+
+    private static PatientJournal open(Path dir) throws IOException {
+        return new PatientJournal("test", dir, 1000);
+    }
+}
@@ -0,0 +1,109 @@
+package com.ftn.sbnz.gcm.service.journal;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.ftn.sbnz.gcm.model.enums.TrendType;
+import com.ftn.sbnz.gcm.model.models.GlucoseMeasurement;
+import com.ftn.sbnz.gcm.model.models.Suggestion;
+import com.ftn.sbnz.gcm.model.models.Trend;
+import com.ftn.sbnz.gcm.service.rules.KieBaseHolder;
+import com.ftn.sbnz.gcm.service.rules.RetentionPolicy;
+import com.ftn.sbnz.gcm.service.rules.RuleMetrics;
+import com.ftn.sbnz.gcm.service.rules.TrendStabilizer;
+import com.ftn.sbnz.gcm.service.service.ClockService;
+import com.ftn.sbnz.gcm.service.service.FoodCatalogIndex;
+import com.ftn.sbnz.gcm.service.service.RuleEngineSessionManager;
+import com.ftn.sbnz.gcm.service.service.RuleEventPublisher;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Restarts the service over the same journal: the simulated clock starts from zero again,
+ * while the recovered session's clock is where the previous run left it.
+ */
+public class SessionRestartTest {
+
+    private static final String PATIENT = "restart";
+    private static final long STEP = Duration.ofMinutes(5).toMillis();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final KieBaseHolder holder = KieBaseHolder.of(KieBaseHolder.compileTemplates());
+    private final List<Trend> trends = new CopyOnWriteArrayList<>();
+
+    @Test
+    public void readingsAfterRecoveryLandAfterTheRestoredClock() throws Exception {
+        AtomicLong firstRun = new AtomicLong();
+        RuleEngineSessionManager manager = start(firstRun);
+        for (int i = 0; i < 24; i++) read(manager, firstRun, 6.0);
+        long lastReading = firstRun.get();
+        manager.stop();
+
+        trends.clear();
+        AtomicLong secondRun = new AtomicLong();
+        ClockService clock = clock(secondRun);
+        manager = start(clock);
+        assertThat(clock.now(), greaterThanOrEqualTo(lastReading));
+
+        // Stamped the way GlucoseController does, with the service clock
+        for (double value : new double[]{5, 7, 9}) {
+            secondRun.addAndGet(STEP);
+            GlucoseMeasurement gm = new GlucoseMeasurement(value, clock.now());
+            manager.execute(PATIENT, s -> s.evaluateAndPublish(gm, true)).join();
+        }
+        Trend last = trends.get(trends.size() - 1);
+        assertThat(last.getDirection(), is(TrendType.UP));
+        assertThat(last.getStrength(), is(2));
+        manager.stop();
+    }
+
+    private void read(RuleEngineSessionManager manager, AtomicLong sim, double value) {
+        GlucoseMeasurement gm = new GlucoseMeasurement(value, sim.addAndGet(STEP));
+        manager.execute(PATIENT, s -> s.evaluateAndPublish(gm, true)).join();
+    }
+
+    private RuleEngineSessionManager start(AtomicLong sim) {
+        return start(clock(sim));
+    }
+
+    private RuleEngineSessionManager start(ClockService clock) {
+        RuleEventPublisher publisher = new RuleEventPublisher() {
+            @Override public void trend(String patientId, Trend trend) { trends.add(trend); }
+            @Override public void suggestion(String patientId, Suggestion suggestion) {}
+        };
+        SessionJournal journal = new SessionJournal();
+        ReflectionTestUtils.setField(journal, "enabled", true);
+        ReflectionTestUtils.setField(journal, "dir", folder.getRoot().getPath());
+        ReflectionTestUtils.setField(journal, "snapshotEvery", 10);
+        FoodCatalogIndex catalog = new FoodCatalogIndex(null);
+        catalog.rebuild(Collections.emptyList());
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        RetentionPolicy retention = new RetentionPolicy(Duration.ofHours(6), Duration.ofHours(24), Duration.ofHours(24), Duration.ofHours(24));
+
+        RuleEngineSessionManager manager = new RuleEngineSessionManager(holder, clock, publisher, retention, catalog,
+                registry, journal, new RuleMetrics(registry), new TrendStabilizer(0.1, Duration.ofMinutes(5)));
+        ReflectionTestUtils.setField(manager, "shardCount", 1);
+        manager.start();
+        return manager;
+    }
+
+    private static ClockService clock(AtomicLong sim) {
+        return new ClockService() {
+            @Override protected long simNow() { return sim.get(); }
+        };
+    }
+}
@@ -0,0 +1,76 @@
+package com.ftn.sbnz.gcm.service.store;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PatientSeriesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void scansRangeAcrossSegmentsAndReopens() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        PatientSeries series = PatientSeries.open(dir, 100);
+        for (int i = 0; i < 1000; i++) series.append(i * 1000L, 4 + i / 100.0);
+        series.force();
+
+        List<Long> times = times(series, 250_000, 260_500);
+        assertThat(times.size(), is(11));
+        assertThat(times.get(0), is(250_000L));
+        assertThat(times.get(10), is(260_000L));
+
+        PatientSeries reopened = PatientSeries.open(dir, 100);
+        assertThat(reopened.count(), is(1000L));
+        assertThat(times(reopened, 250_000, 260_500), is(times));
+        double[] mmol = new double[1];
+        reopened.scan(999_000, 999_000, 1, (t, value) -> mmol[0] = value);
+        assertThat(mmol[0], is(4 + 999 / 100.0));
+    }
+
+    @Test
+    public void scanStopsAtTheLimit() throws Exception {
+        PatientSeries series = PatientSeries.open(folder.getRoot().toPath(), 100);
+        for (int i = 0; i < 1000; i++) series.append(i * 1000L, 5.0);
+
+        List<Long> times = new ArrayList<>();
+        assertThat(series.scan(150_000, 999_000, 120, (t, mmol) -> times.add(t)), is(120));
+        assertThat(times.size(), is(120));
+        assertThat(times.get(119), is(269_000L));
+        assertThat(series.scan(0, 999_000, 0, (t, mmol) -> times.add(t)), is(0));
+    }
+
+    @Test
+    public void compactionDropsOldSegmentsAndSortsLateOnes() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        PatientSeries series = PatientSeries.open(dir, 100);
+        for (int i = 0; i < 300; i++) series.append(i * 1000L, 5.0);
+        // A late backfill lands in the open segment, which is sealed by the next rollover
+        for (int i = 0; i < 50; i++) series.append(250_000L - i * 7, 6.0);
+        for (int i = 0; i < 100; i++) series.append(400_000L + i, 7.0);
+
+        assertThat(series.compact(100_000), is(2));
+        assertThat(series.count(), is(350L));
+        assertThat(times(series, 0, 99_999).size(), is(0));
+        List<Long> late = times(series, 249_600, 249_999);
+        assertThat(late.size(), is(49));
+        List<Long> sorted = new ArrayList<>(late);
+        sorted.sort(null);
+        assertThat(late, is(sorted));
+        assertThat(series.compact(100_000), is(0));
+    }
+
+    private static List<Long> times(PatientSeries series, long from, long to) {
+        List<Long> times = new ArrayList<>();
+        series.scan(from, to, Integer.MAX_VALUE, (t, mmol) -> times.add(t));
+        return times;
+    }
+}